@@ -0,0 +1,47 @@
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+/**
+ * This class measures the bytes allocated per token to build the parse tree of
+ * a program, and then to simplify it. It parses a generated program whose
+ * number of instructions is given as argument (20000 by default), and reads
+ * the bytes allocated by the thread before and after each step. The steps are
+ * run a few times, and the last run is printed.
+ */
+public class AllocationBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        StringBuilder source = new StringBuilder("BEGIN Benchmark\n  READ(y) ,\n  READ(z) ,\n");
+        for (int i = 0; i < 100; i++) {
+            source.append("  READ(x").append(i).append(") ,\n");
+        }
+        for (int i = 0; i < instructions; i++) {
+            source.append("  x").append(i % 100).append(" := (x").append((i + 1) % 100)
+                    .append(" + ").append(i).append(") * -y - z / 2 ,\n");
+        }
+        source.append("END");
+        String text = source.toString();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < RUNS; i++) {
+            TokenBuffer tokens = TokenBuffer.lex(new Lexer(new StringReader(text)), text);
+            long start = threads.getThreadAllocatedBytes(thread);
+            Parser parser = new Parser(new TokenStream(tokens));
+            parser.parse();
+            ParseTree tree = parser.getParseTree();
+            long parsed = threads.getThreadAllocatedBytes(thread);
+            new TreeSimplifier(tree).simplify();
+            long simplified = threads.getThreadAllocatedBytes(thread);
+
+            if (i == RUNS - 1) {
+                System.out.println("tokens: " + tokens.size());
+                System.out.println("parse:    " + (parsed - start) / tokens.size() + " bytes per token");
+                System.out.println("simplify: " + (simplified - parsed) / tokens.size() + " bytes per token");
+            }
+        }
+    }
+}
@@ -0,0 +1,434 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class is a hand-written scanner for the FORTRESS language which can be
+ * used instead of the Lexer generated by JFlex. It returns the same tokens and
+ * throws the same errors, but it is written for ASCII sources: the characters
+ * are dispatched by a switch instead of going through the DFA tables, and the
+ * lines are not followed at all: the tokens only carry their offset.
+ */
+public class AsciiScanner implements TokenSource {
+    private static final int BUFFER_SIZE = 16384;
+    private static final int YYINITIAL = 0;
+    private static final int COMMENT = 1;
+
+    private Reader reader;
+    private char[] buffer;
+    private int start; // index in the buffer of the first character of the current token
+    private int pos; // index in the buffer of the next character to read
+    private int limit; // number of characters read into the buffer
+    private long bufferOffset; // offset in the input of the first character of the buffer
+    private boolean atEOF;
+    private int state;
+    private int stackStateComment;
+    private boolean eofDone;
+    private IdentifierTable identifiers;
+    private LineIndex lines;
+
+    /**
+     * Constructor of the class.
+     *
+     * @param in the reader to read the input from.
+     */
+    public AsciiScanner(Reader in) {
+        this.reader = in;
+        this.buffer = new char[BUFFER_SIZE];
+        this.start = 0;
+        this.pos = 0;
+        this.limit = 0;
+        this.bufferOffset = 0;
+        this.atEOF = false;
+        this.state = YYINITIAL;
+        this.stackStateComment = 0;
+        this.eofDone = false;
+        this.identifiers = new IdentifierTable();
+        this.lines = LineIndex.UNKNOWN;
+    }
+
+    @Override
+    public IdentifierTable getIdentifiers() {
+        return identifiers;
+    }
+
+    @Override
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+
+    @Override
+    public void setLineIndex(LineIndex lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * @return the variables sorted by name, with the position of their first occurrence.
+     */
+    public ArrayList<Symbol> getVariables() {
+        return identifiers.getSortedVariables();
+    }
+
+    @Override
+    public long getOffset() {
+        return bufferOffset + start;
+    }
+
+    @Override
+    public int yylength() {
+        return pos - start;
+    }
+
+    /**
+     * This method reads more input into the buffer. The characters before the
+     * current token are dropped, and the buffer grows if the token fills it.
+     *
+     * @return false if the end of the input has been reached.
+     * @throws IOException if the input cannot be read.
+     */
+    private boolean refill() throws IOException {
+        if (atEOF) {
+            return false;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            bufferOffset += start;
+            pos -= start;
+            limit -= start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int n = reader.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            atEOF = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * @param k the distance from the current position.
+     * @return the k-th next character, or -1 after the end of the input.
+     * @throws IOException if the input cannot be read.
+     */
+    private int peek(int k) throws IOException {
+        while (pos + k >= limit) {
+            if (!refill()) {
+                return -1;
+            }
+        }
+        return buffer[pos + k];
+    }
+
+    /**
+     * @return true for the line terminators other than '\r' and '\n'.
+     */
+    private static boolean isOtherLineTerminator(int c) {
+        return c == 0x0B || c == 0x0C || c == 0x85 || c == 0x2028 || c == 0x2029;
+    }
+
+    private Symbol token(LexicalUnit unit, String value) {
+        return new Symbol(unit, getOffset(), value);
+    }
+
+    /**
+     * This method consumes a line terminator starting with the given character.
+     */
+    private void lineTerminator(int c) throws IOException {
+        pos++;
+        if (c == '\r' && peek(0) == '\n') {
+            pos++;
+        }
+    }
+
+    /**
+     * This method handles the characters matched by no rule of the lexer, which
+     * JFlex echoes to the standard output in standalone mode.
+     */
+    private void echo(int c) {
+        pos++;
+        System.out.print((char) c);
+    }
+
+    /**
+     * This method throws the error of an unexpected character, as the lexer does.
+     */
+    private Error unexpected(int c) throws IOException {
+        pos++;
+        if (Character.isHighSurrogate((char) c) && Character.isLowSurrogate((char) peek(0))) {
+            pos++;
+        }
+        String text = new String(buffer, start, pos - start);
+        return new Error("An unexpected symbol has been encountered : '" + text + "'. At line "
+                + lines.getLine(getOffset()) + " and column " + lines.getColumn(getOffset()) + ".");
+    }
+
+    @Override
+    public Symbol yylex() throws IOException {
+        while (true) {
+            start = pos;
+            int c = peek(0);
+            if (c < 0) {
+                return endOfInput();
+            }
+            if (state == COMMENT) {
+                comment();
+                continue;
+            }
+            switch (c) {
+                case ' ':
+                case '\n':
+                case '\r':
+                    skipBlanks();
+                    break;
+                case ',':
+                    pos++;
+                    return token(LexicalUnit.COMMA, ",");
+                case '(':
+                    pos++;
+                    return token(LexicalUnit.LPAREN, "(");
+                case ')':
+                    pos++;
+                    return token(LexicalUnit.RPAREN, ")");
+                case '-':
+                    pos++;
+                    return token(LexicalUnit.MINUS, "-");
+                case '+':
+                    pos++;
+                    return token(LexicalUnit.PLUS, "+");
+                case '*':
+                    pos++;
+                    return token(LexicalUnit.TIMES, "*");
+                case '/':
+                    pos++;
+                    return token(LexicalUnit.DIVIDE, "/");
+                case '=':
+                    pos++;
+                    return token(LexicalUnit.EQUAL, "=");
+                case '>':
+                    pos++;
+                    return token(LexicalUnit.GREATER, ">");
+                case '<':
+                    pos++;
+                    return token(LexicalUnit.SMALLER, "<");
+                case ':':
+                    if (peek(1) == '=') {
+                        pos += 2;
+                        return token(LexicalUnit.ASSIGN, ":=");
+                    }
+                    if (peek(1) == ':') {
+                        shortComment();
+                        break;
+                    }
+                    throw unexpected(c);
+                case '%':
+                    if (peek(1) == '%') {
+                        pos += 2;
+                        stackStateComment++;
+                        state = COMMENT;
+                        break;
+                    }
+                    throw unexpected(c);
+                case '0':
+                    pos++;
+                    return token(LexicalUnit.NUMBER, "0");
+                default:
+                    if (c >= '1' && c <= '9') {
+                        return number();
+                    }
+                    if (c >= 'a' && c <= 'z') {
+                        return varName();
+                    }
+                    if (c >= 'A' && c <= 'Z') {
+                        return word();
+                    }
+                    if (isOtherLineTerminator(c)) {
+                        echo(c);
+                        break;
+                    }
+                    throw unexpected(c);
+            }
+        }
+    }
+
+    /**
+     * This method returns the EOS token, after checking once that no long comment
+     * is left open.
+     */
+    private Symbol endOfInput() {
+        if (!eofDone) {
+            eofDone = true;
+            if (stackStateComment != 0) {
+                throw new Error("The long comment has not been closed!");
+            }
+        }
+        return token(LexicalUnit.EOS, "EOS");
+    }
+
+    /**
+     * This method skips the spaces and the line terminators which follow in the
+     * buffer.
+     */
+    private void skipBlanks() {
+        char[] buffer = this.buffer;
+        int p = pos;
+        while (p < limit) {
+            char c = buffer[p];
+            if (c != ' ' && c != '\n' && c != '\r') {
+                break;
+            }
+            p++;
+        }
+        pos = p;
+    }
+
+    /**
+     * This method skips the content of a long comment until its closing "%%".
+     * The characters which cannot close the comment are skipped in bulk, and the
+     * other ones are handled one by one.
+     */
+    private void comment() throws IOException {
+        while (true) {
+            char[] buffer = this.buffer;
+            int p = pos;
+            while (p < limit) {
+                char d = buffer[p];
+                if (d == '%' || d == 0x0B || d == 0x0C || d == 0x85 || d == 0x2028 || d == 0x2029) {
+                    break;
+                }
+                p++;
+            }
+            pos = p;
+            start = pos;
+            int c = peek(0);
+            if (c < 0) {
+                return;
+            }
+            if (c == '%' && peek(1) == '%') {
+                pos += 2;
+                stackStateComment--;
+                state = YYINITIAL;
+                return;
+            }
+            if (isOtherLineTerminator(c)) {
+                echo(c);
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * This method skips a "::" comment and the line terminator ending it.
+     */
+    private void shortComment() throws IOException {
+        pos += 2;
+        while (true) {
+            char[] buffer = this.buffer;
+            int p = pos;
+            while (p < limit) {
+                char d = buffer[p];
+                if (d == '\n' || d == '\r') {
+                    break;
+                }
+                p++;
+            }
+            pos = p;
+            start = pos;
+            int c = peek(0);
+            if (c < 0) {
+                return;
+            }
+            if (c == '\n' || c == '\r') {
+                lineTerminator(c);
+                return;
+            }
+        }
+    }
+
+    private Symbol number() throws IOException {
+        pos++;
+        int c = peek(0);
+        while (c >= '0' && c <= '9') {
+            pos++;
+            c = peek(0);
+        }
+        return token(LexicalUnit.NUMBER, new String(buffer, start, pos - start));
+    }
+
+    private Symbol varName() throws IOException {
+        pos++;
+        int c = peek(0);
+        while ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+            pos++;
+            c = peek(0);
+        }
+        int id = identifiers.intern(new String(buffer, start, pos - start), getOffset());
+        return new Symbol(LexicalUnit.VARNAME, getOffset(), identifiers.getName(id), id);
+    }
+
+    /**
+     * This method scans a word starting with an upper case letter. The whole word
+     * is a program name if it contains a lower case letter. Otherwise, only a
+     * keyword at its start can be matched.
+     */
+    private Symbol word() throws IOException {
+        int c = peek(0);
+        boolean lowerCase = false;
+        int length = 0;
+        while ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            lowerCase |= c >= 'a';
+            length++;
+            c = peek(length);
+        }
+        if (lowerCase) {
+            pos += length;
+            return token(LexicalUnit.PROGNAME, new String(buffer, start, length));
+        }
+        switch (buffer[pos]) {
+            case 'B':
+                return keyword(length, "BEGIN", LexicalUnit.BEGIN);
+            case 'D':
+                return keyword(length, "DO", LexicalUnit.DO);
+            case 'E':
+                if (length > 1 && buffer[pos + 1] == 'N') {
+                    return keyword(length, "END", LexicalUnit.END);
+                }
+                return keyword(length, "ELSE", LexicalUnit.ELSE);
+            case 'I':
+                return keyword(length, "IF", LexicalUnit.IF);
+            case 'P':
+                return keyword(length, "PRINT", LexicalUnit.PRINT);
+            case 'R':
+                return keyword(length, "READ", LexicalUnit.READ);
+            case 'T':
+                return keyword(length, "THEN", LexicalUnit.THEN);
+            case 'W':
+                return keyword(length, "WHILE", LexicalUnit.WHILE);
+            default:
+                throw unexpected(buffer[pos]);
+        }
+    }
+
+    /**
+     * This method matches the given keyword at the start of a word of upper case
+     * letters and digits.
+     */
+    private Symbol keyword(int length, String keyword, LexicalUnit unit) throws IOException {
+        int n = keyword.length();
+        if (length < n) {
+            throw unexpected(buffer[pos]);
+        }
+        for (int i = 1; i < n; i++) {
+            if (buffer[pos + i] != keyword.charAt(i)) {
+                throw unexpected(buffer[pos]);
+            }
+        }
+        pos += n;
+        return token(unit, keyword);
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This interface is the root of the typed abstract syntax tree given to the
+ * LLVMGenerator. Each kind of node is a record holding its fields directly,
+ * instead of a ParseTree with a list of children and a Symbol with a boxed
+ * value. The tree is built from the simplified tree by fromTree().
+ * The variables are given by their id in the SymbolTable of the program.
+ * The expressions are hash-consed by an ExprTable: the structurally identical
+ * subexpressions of a program are one shared node. The operations are
+ * therefore compared and hashed by identity, and shown without their
+ * operands, instead of walking the whole subexpression each time, which takes
+ * exponential time on a shared one.
+ */
+public sealed interface Ast {
+
+    /**
+     * The nodes which can appear in a code block.
+     */
+    sealed interface Instruction extends Ast permits Assign, If, While, Print, Read {
+    }
+
+    /**
+     * The nodes of the arithmetic expressions and of the conditions.
+     */
+    sealed interface Expr extends Ast permits BinOp, NaryOp, Neg, Var, IntLit {
+    }
+
+    /**
+     * @param name the name of the program.
+     * @param code the instructions of the program.
+     */
+    record Program(String name, List<Instruction> code) implements Ast {
+    }
+
+    record Assign(int id, Expr value) implements Instruction {
+    }
+
+    /**
+     * @param cond      a comparison.
+     * @param then      the instructions executed if the condition holds.
+     * @param otherwise the instructions of the ELSE, or null if there is none.
+     */
+    record If(BinOp cond, List<Instruction> then, List<Instruction> otherwise) implements Instruction {
+    }
+
+    record While(BinOp cond, List<Instruction> body) implements Instruction {
+    }
+
+    record Print(int id) implements Instruction {
+    }
+
+    record Read(int id) implements Instruction {
+    }
+
+    /**
+     * @param op the operator: '-' or '/' for the arithmetic, and '=', '<' or '>'
+     *           for the comparisons.
+     */
+    record BinOp(char op, Expr left, Expr right) implements Expr {
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return describe("BinOp", op, this);
+        }
+    }
+
+    /**
+     * A run of additions or of multiplications, such as a + b + c.
+     *
+     * @param op       the operator: '+' or '*'.
+     * @param operands the operands, at least two, from left to right.
+     */
+    record NaryOp(char op, List<Expr> operands) implements Expr {
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return describe("NaryOp", op, this);
+        }
+    }
+
+    record Neg(Expr operand) implements Expr {
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return describe("Neg", '-', this);
+        }
+    }
+
+    record Var(int id) implements Expr {
+    }
+
+    record IntLit(long value) implements Expr {
+    }
+
+    /**
+     * This method converts a simplified tree, as built by
+     * Parser.parseSimplified() or copied from the result of the TreeSimplifier,
+     * into a typed tree.
+     *
+     * @param tree    the flat tree holding the simplified tree.
+     * @param root    the <Program> node of the simplified tree.
+     * @param symbols the variables of the program.
+     * @return the typed tree of the program.
+     */
+    static Program fromTree(FlatTree tree, int root, SymbolTable symbols) {
+        return fromTree(tree, root, symbols, new ExprTable());
+    }
+
+    /**
+     * This method converts a simplified tree into a typed tree, whose
+     * expressions are built by the given table, so that the later passes can
+     * look them up.
+     *
+     * @param tree    the flat tree holding the simplified tree.
+     * @param root    the <Program> node of the simplified tree.
+     * @param symbols the variables of the program.
+     * @param exprs   the table building the expressions.
+     * @return the typed tree of the program.
+     */
+    static Program fromTree(FlatTree tree, int root, SymbolTable symbols, ExprTable exprs) {
+        return new Program(tree.getValue(tree.getChild(root, 1)),
+                code(tree, tree.getChild(root, 2), symbols, exprs));
+    }
+
+    private static List<Instruction> code(FlatTree tree, int node, SymbolTable symbols, ExprTable exprs) {
+        ArrayList<Instruction> code = new ArrayList<>(tree.getChildCount(node));
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            code.add(instruction(tree, child, symbols, exprs));
+        }
+        return code;
+    }
+
+    private static Instruction instruction(FlatTree tree, int node, SymbolTable symbols, ExprTable exprs) {
+        int first = tree.getFirstChild(node);
+        switch (tree.getKind(node)) {
+            case ASSIGN_:
+                return new Assign(symbols.getId(tree.getValue(first)),
+                        expr(tree, tree.getNextSibling(first), symbols, exprs));
+            case IF_:
+                int then = tree.getNextSibling(first);
+                int otherwise = tree.getNextSibling(then);
+                return new If(cond(tree, first, symbols, exprs), code(tree, then, symbols, exprs),
+                        otherwise != FlatTree.NONE ? code(tree, otherwise, symbols, exprs) : null);
+            case WHILE_:
+                return new While(cond(tree, first, symbols, exprs),
+                        code(tree, tree.getNextSibling(first), symbols, exprs));
+            case PRINT_:
+                return new Print(symbols.getId(tree.getValue(first)));
+            case READ_:
+                return new Read(symbols.getId(tree.getValue(first)));
+            default:
+                throw new IllegalArgumentException("Not an instruction: " + tree.getKind(node));
+        }
+    }
+
+    private static BinOp cond(FlatTree tree, int node, SymbolTable symbols, ExprTable exprs) {
+        int left = tree.getFirstChild(node);
+        return exprs.binOp(tree.getValue(node).charAt(0), expr(tree, left, symbols, exprs),
+                expr(tree, tree.getNextSibling(left), symbols, exprs));
+    }
+
+    private static Expr expr(FlatTree tree, int node, SymbolTable symbols, ExprTable exprs) {
+        int first = tree.getFirstChild(node);
+        switch (tree.getKind(node)) {
+            case VARNAME:
+                return exprs.var(symbols.getId(tree.getValue(node)));
+            case NUMBER:
+                return exprs.intLit(Long.parseLong(tree.getValue(node)));
+            case MINUS:
+                if (tree.getNextSibling(first) == FlatTree.NONE) {
+                    return exprs.neg(expr(tree, first, symbols, exprs));
+                }
+                return leftOperations(tree, node, symbols, exprs);
+            case DIVIDE:
+                return leftOperations(tree, node, symbols, exprs);
+            case PLUS:
+            case TIMES:
+                ArrayList<Expr> operands = new ArrayList<>(tree.getChildCount(node));
+                for (int child = first; child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+                    operands.add(expr(tree, child, symbols, exprs));
+                }
+                return exprs.naryOp(tree.getValue(node).charAt(0), operands);
+            default:
+                throw new IllegalArgumentException("Not an expression: " + tree.getKind(node));
+        }
+    }
+
+    /**
+     * This method converts a - or a / and the ones nested in its left operand,
+     * like a - b - c, without a recursive call for each of them.
+     */
+    private static Expr leftOperations(FlatTree tree, int node, SymbolTable symbols, ExprTable exprs) {
+        ArrayList<Integer> operations = new ArrayList<>();
+        while (isLeftOperation(tree, node)) {
+            operations.add(node);
+            node = tree.getFirstChild(node);
+        }
+        Expr result = expr(tree, node, symbols, exprs);
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            int operation = operations.get(i);
+            int right = tree.getNextSibling(tree.getFirstChild(operation));
+            result = exprs.binOp(tree.getValue(operation).charAt(0), result, expr(tree, right, symbols, exprs));
+        }
+        return result;
+    }
+
+    /**
+     * @return the kind and the operator of an operation, and its identity.
+     */
+    private static String describe(String kind, char op, Expr expr) {
+        return kind + "[op=" + op + "]@" + Integer.toHexString(System.identityHashCode(expr));
+    }
+
+    private static boolean isLeftOperation(FlatTree tree, int node) {
+        LexicalUnit kind = tree.getKind(node);
+        return kind == LexicalUnit.DIVIDE
+                || kind == LexicalUnit.MINUS && tree.getNextSibling(tree.getFirstChild(node)) != FlatTree.NONE;
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class reads the sources compressed with gzip, whose name ends with
+ * ".gz". The decompressed bytes are decoded as UTF-8 while they are read, so
+ * the source is never written back to the disk.
+ */
+public class CompressedSource {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CompressedSource() {
+    }
+
+    /**
+     * @param fileName the name of a source file.
+     * @return true if the file is compressed with gzip.
+     */
+    public static boolean isCompressed(String fileName) {
+        return fileName.endsWith(".gz");
+    }
+
+    /**
+     * @param fileName the name of the compressed file.
+     * @return a reader on the decompressed text of the file.
+     * @throws IOException if the file cannot be opened or is not in the gzip format.
+     */
+    public static Reader open(String fileName) throws IOException {
+        InputStream file = new FileInputStream(fileName);
+        try {
+            return new InputStreamReader(new GZIPInputStream(file, BUFFER_SIZE), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param fileName the name of the compressed file.
+     * @return the whole decompressed text of the file.
+     * @throws IOException if the file cannot be read or is not in the gzip format.
+     */
+    public static String read(String fileName) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(fileName), BUFFER_SIZE)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class keeps the left-most derivation of a variable of the grammar in a
+ * compact way: the numbers of the applied rules, in order, and the tokens
+ * matched, which are the leaves of the parse tree from left to right. This is
+ * enough to build the parse tree again, so that it only exists while it is
+ * needed.
+ * When the tokens are in a TokenBuffer, only the index of the first one is
+ * kept. Otherwise, the labels of the leaves are kept, the ones of the keywords
+ * and of the punctuation being shared.
+ */
+public class Derivation {
+    private LexicalUnit start;
+    private int[] rules;
+    private int ruleCount;
+    private TokenBuffer buffer;
+    private int firstToken;
+    private Symbol[] leaves;
+    private int leafCount;
+
+    /**
+     * Constructor of the class for tokens which are not stored anywhere else.
+     *
+     * @param start the variable derived.
+     */
+    public Derivation(LexicalUnit start) {
+        this(start, null, 0);
+        this.leaves = new Symbol[64];
+    }
+
+    /**
+     * Constructor of the class for tokens stored in a buffer.
+     *
+     * @param start      the variable derived.
+     * @param buffer     the buffer holding the tokens.
+     * @param firstToken the index of the first token matched.
+     */
+    public Derivation(LexicalUnit start, TokenBuffer buffer, int firstToken) {
+        this.start = start;
+        this.rules = new int[64];
+        this.ruleCount = 0;
+        this.buffer = buffer;
+        this.firstToken = firstToken;
+        this.leaves = null;
+        this.leafCount = 0;
+    }
+
+    /**
+     * @return the variable derived.
+     */
+    public LexicalUnit getStart() {
+        return start;
+    }
+
+    /**
+     * @return the number of rules applied.
+     */
+    public int size() {
+        return ruleCount;
+    }
+
+    /**
+     * @param i the position of a rule in the derivation.
+     * @return the number of the rule.
+     */
+    public int getRule(int i) {
+        return rules[i];
+    }
+
+    /**
+     * This method adds the next rule applied.
+     *
+     * @param rule the number of the rule.
+     */
+    public void addRule(int rule) {
+        if (ruleCount == rules.length) {
+            rules = Arrays.copyOf(rules, ruleCount * 2);
+        }
+        rules[ruleCount++] = rule;
+    }
+
+    /**
+     * This method adds the next token matched. Nothing is kept when the tokens
+     * are in a buffer.
+     *
+     * @param unit  the lexical unit of the token.
+     * @param value the value of the token.
+     */
+    public void addToken(LexicalUnit unit, String value) {
+        if (buffer != null) {
+            return;
+        }
+        if (leafCount == leaves.length) {
+            leaves = Arrays.copyOf(leaves, leafCount * 2);
+        }
+        leaves[leafCount++] = Symbol.label(unit, value);
+    }
+
+    /**
+     * This method adds the rules and the tokens of another derivation, which
+     * follows this one in the same TokenBuffer or whose tokens are not stored
+     * either.
+     *
+     * @param other the derivation to add.
+     */
+    public void append(Derivation other) {
+        if (ruleCount + other.ruleCount > rules.length) {
+            rules = Arrays.copyOf(rules, Math.max(ruleCount + other.ruleCount, rules.length * 2));
+        }
+        System.arraycopy(other.rules, 0, rules, ruleCount, other.ruleCount);
+        ruleCount += other.ruleCount;
+        if (buffer == null) {
+            if (leafCount + other.leafCount > leaves.length) {
+                leaves = Arrays.copyOf(leaves, Math.max(leafCount + other.leafCount, leaves.length * 2));
+            }
+            System.arraycopy(other.leaves, 0, leaves, leafCount, other.leafCount);
+            leafCount += other.leafCount;
+        }
+    }
+
+    /**
+     * This method frees the unused capacity of the arrays.
+     */
+    public void trimToSize() {
+        rules = Arrays.copyOf(rules, ruleCount);
+        if (leaves != null) {
+            leaves = Arrays.copyOf(leaves, leafCount);
+        }
+    }
+
+    /**
+     * This method builds the parse tree of the derivation, in the same way as the
+     * Parser derives the variable: a stack holds the symbols of the rules still
+     * to be expanded, with the node they belong to, and each variable on top of
+     * it is expanded by the next rule. A new tree is built at each call.
+     *
+     * @return the parse tree.
+     */
+    public ParseTree toParseTree() {
+        LexicalUnit[] symbols = new LexicalUnit[64];
+        ParseTree[] parents = new ParseTree[64];
+        int size = 0;
+        symbols[size++] = start;
+        ParseTree root = null;
+        int rule = 0;
+        int token = 0;
+        while (size > 0) {
+            size--;
+            LexicalUnit symbol = symbols[size];
+            ParseTree parent = parents[size];
+            parents[size] = null;
+
+            ParseTree pt;
+            if (Grammar.isTerminal(symbol)) {
+                pt = new ParseTree(leaf(symbol, token++));
+            } else {
+                LexicalUnit[] right = Grammar.getRight(rules[rule++]);
+                pt = new ParseTree(Symbol.label(symbol, Grammar.getLabel(symbol)),
+                        new ArrayList<>(Math.max(right.length, 1)));
+                if (right.length == 0) {
+                    pt.getChildren().add(new ParseTree(Symbol.label(LexicalUnit.EPSILON, "E")));
+                }
+                if (size + right.length > symbols.length) {
+                    symbols = Arrays.copyOf(symbols, Math.max(size + right.length, symbols.length * 2));
+                    parents = Arrays.copyOf(parents, symbols.length);
+                }
+                for (int i = right.length - 1; i >= 0; i--) {
+                    symbols[size] = right[i];
+                    parents[size++] = pt;
+                }
+            }
+
+            if (parent == null) {
+                root = pt;
+            } else {
+                parent.getChildren().add(pt);
+            }
+        }
+        return root;
+    }
+
+    private Symbol leaf(LexicalUnit symbol, int token) {
+        if (buffer == null) {
+            return leaves[token];
+        }
+        return Symbol.label(symbol, buffer.getText(firstToken + token));
+    }
+}
@@ -0,0 +1,256 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class hash-conses the expressions of the typed tree: it builds them
+ * bottom-up and returns a single shared node for all the expressions with the
+ * same structure, so that a repeated subexpression such as (a + b) * c is
+ * only kept once, and two expressions are the same if and only if they are
+ * the same object.
+ * Since the operands of an expression are shared already, they are compared
+ * with == and hashed by identity, so an expression is found in constant time
+ * instead of by comparing whole subtrees. Each distinct expression receives a
+ * dense id (0, 1, 2, ...) in order of creation, and its hash is computed once
+ * and kept with its id in an open-addressing table, so that most of the slots
+ * met while looking for an expression are skipped without reading it, and the
+ * table takes a few bytes per distinct expression.
+ * The table also counts how many times each expression has been built, so
+ * that the LLVMGenerator can compute a repeated expression only once.
+ */
+public class ExprTable {
+    private static final int VAR = 1;
+    private static final int INT_LIT = 2;
+    private static final int NEG = 3;
+    private static final int BIN_OP = 4;
+    private static final int NARY_OP = 5;
+
+    private Ast.Expr[] exprs;
+    private int[] uses;
+    private int size;
+    // The hash of each expression in the high half of its slot and its id plus
+    // one in the low half, or 0 for an empty slot
+    private long[] slots;
+
+    /**
+     * Constructor of the class. It creates an empty table.
+     */
+    public ExprTable() {
+        this.exprs = new Ast.Expr[16];
+        this.uses = new int[16];
+        this.size = 0;
+        this.slots = new long[32];
+    }
+
+    /**
+     * @param id the id of a variable.
+     * @return the shared node of the variable.
+     */
+    public Ast.Expr var(int id) {
+        return intern(new Ast.Var(id));
+    }
+
+    /**
+     * @param value the value of an integer.
+     * @return the shared node of the integer.
+     */
+    public Ast.Expr intLit(long value) {
+        return intern(new Ast.IntLit(value));
+    }
+
+    /**
+     * @param operand a node built by this table.
+     * @return the shared node of the opposite of the operand.
+     */
+    public Ast.Expr neg(Ast.Expr operand) {
+        return intern(new Ast.Neg(operand));
+    }
+
+    /**
+     * @param op    the operator, as in Ast.BinOp.
+     * @param left  a node built by this table.
+     * @param right a node built by this table.
+     * @return the shared node of the operation.
+     */
+    public Ast.BinOp binOp(char op, Ast.Expr left, Ast.Expr right) {
+        return (Ast.BinOp) intern(new Ast.BinOp(op, left, right));
+    }
+
+    /**
+     * @param op       the operator, as in Ast.NaryOp.
+     * @param operands nodes built by this table. The list is copied if the
+     *                 operation is new.
+     * @return the shared node of the operation.
+     */
+    public Ast.Expr naryOp(char op, List<Ast.Expr> operands) {
+        Ast.NaryOp expr = new Ast.NaryOp(op, operands);
+        int hash = hash(expr);
+        int slot = find(expr, hash);
+        if (slots[slot] != 0) {
+            return use(slot);
+        }
+        return add(slot, hash, new Ast.NaryOp(op, List.copyOf(operands)));
+    }
+
+    /**
+     * @return the id of the expression, or -1 if it has not been built by this
+     *         table.
+     */
+    private int getId(Ast.Expr expr) {
+        int mask = slots.length - 1;
+        for (int i = hash(expr) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int id = (int) slots[i] - 1;
+            if (exprs[id] == expr) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param expr an expression built by this table.
+     * @return the number of times the expression has been built, which is more
+     *         than one for a repeated computation.
+     * @throws IllegalArgumentException if the expression has not been built by
+     *                                  this table.
+     */
+    public int getUses(Ast.Expr expr) {
+        int id = getId(expr);
+        if (id < 0) {
+            throw new IllegalArgumentException("The expression " + expr + " has not been built by this table");
+        }
+        return uses[id];
+    }
+
+    /**
+     * @return the number of distinct expressions in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This method returns the expression of the table with the same structure as
+     * the given one, which is added to the table if there is none.
+     */
+    private Ast.Expr intern(Ast.Expr expr) {
+        int hash = hash(expr);
+        int slot = find(expr, hash);
+        if (slots[slot] != 0) {
+            return use(slot);
+        }
+        return add(slot, hash, expr);
+    }
+
+    /**
+     * @return the slot of the expression of the table with the same structure as
+     *         the given one, or the empty slot where it has to be added.
+     */
+    private int find(Ast.Expr expr, int hash) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while (slots[i] != 0) {
+            if ((int) (slots[i] >>> 32) == hash && same(exprs[(int) slots[i] - 1], expr)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private Ast.Expr use(int slot) {
+        int id = (int) slots[slot] - 1;
+        uses[id]++;
+        return exprs[id];
+    }
+
+    private Ast.Expr add(int slot, int hash, Ast.Expr expr) {
+        if (size == exprs.length) {
+            exprs = Arrays.copyOf(exprs, size * 2);
+            uses = Arrays.copyOf(uses, size * 2);
+        }
+        exprs[size] = expr;
+        uses[size] = 1;
+        size++;
+        slots[slot] = (long) hash << 32 | size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return expr;
+    }
+
+    /**
+     * This method doubles the number of slots, and moves the full slots with the
+     * hashes kept.
+     */
+    private void rehash() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        int mask = slots.length - 1;
+        for (long slot : old) {
+            if (slot != 0) {
+                int i = (int) (slot >>> 32) & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = slot;
+            }
+        }
+    }
+
+    /**
+     * @return the hash of the kind of the expression, of its operator or its
+     *         value, and of the identity of its operands.
+     */
+    private static int hash(Ast.Expr expr) {
+        if (expr instanceof Ast.Var var) {
+            return mix(VAR ^ mix(var.id()));
+        } else if (expr instanceof Ast.IntLit number) {
+            return mix(INT_LIT ^ mix(Long.hashCode(number.value())));
+        } else if (expr instanceof Ast.Neg neg) {
+            return mix(NEG ^ mix(System.identityHashCode(neg.operand())));
+        } else if (expr instanceof Ast.BinOp binOp) {
+            int hash = mix(BIN_OP ^ mix(binOp.op()));
+            hash = mix(hash ^ System.identityHashCode(binOp.left()));
+            return mix(hash ^ System.identityHashCode(binOp.right()));
+        }
+        Ast.NaryOp naryOp = (Ast.NaryOp) expr;
+        int hash = mix(NARY_OP ^ mix(naryOp.op()));
+        for (Ast.Expr operand : naryOp.operands()) {
+            hash = mix(hash ^ System.identityHashCode(operand));
+        }
+        return hash;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B1;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * @return true if the two expressions have the same kind, the same operator
+     *         or value, and the same operands.
+     */
+    private static boolean same(Ast.Expr a, Ast.Expr b) {
+        if (a instanceof Ast.Var var) {
+            return b instanceof Ast.Var other && var.id() == other.id();
+        } else if (a instanceof Ast.IntLit number) {
+            return b instanceof Ast.IntLit other && number.value() == other.value();
+        } else if (a instanceof Ast.Neg neg) {
+            return b instanceof Ast.Neg other && neg.operand() == other.operand();
+        } else if (a instanceof Ast.BinOp binOp) {
+            return b instanceof Ast.BinOp other && binOp.op() == other.op() && binOp.left() == other.left()
+                    && binOp.right() == other.right();
+        }
+        Ast.NaryOp naryOp = (Ast.NaryOp) a;
+        if (!(b instanceof Ast.NaryOp other) || naryOp.op() != other.op()
+                || naryOp.operands().size() != other.operands().size()) {
+            return false;
+        }
+        for (int i = 0; i < naryOp.operands().size(); i++) {
+            if (naryOp.operands().get(i) != other.operands().get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
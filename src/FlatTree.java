@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class stores trees in a few arrays of primitives instead of one
+ * ParseTree, one ArrayList and one Symbol per node. A node is an index in the
+ * arrays, which give its kind, its first child, its next sibling and the index
+ * of its value in a table of strings. The values are interned in the table, so
+ * a variable name used a million times is stored once.
+ * The nodes are read through the node indexes (a cursor), or by a Visitor
+ * called by walk(), which uses an explicit stack and therefore works on trees
+ * of any depth.
+ */
+public class FlatTree {
+    /**
+     * The index standing for no node: the first child of a leaf, the next
+     * sibling of a last child.
+     */
+    public static final int NONE = -1;
+
+    private static final LexicalUnit[] UNITS = LexicalUnit.values();
+
+    private byte[] kinds;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] payloads;
+    private int size;
+    private ArrayList<String> values;
+    private HashMap<String, Integer> valueIds;
+
+    /**
+     * This interface is called by walk() on the nodes of a tree.
+     */
+    public interface Visitor {
+        /**
+         * This method is called on a node before its children.
+         *
+         * @param tree the tree being walked.
+         * @param node the node.
+         */
+        void enter(FlatTree tree, int node);
+
+        /**
+         * This method is called on a node after its children.
+         *
+         * @param tree the tree being walked.
+         * @param node the node.
+         */
+        void leave(FlatTree tree, int node);
+    }
+
+    /**
+     * Constructor of the class. It creates an empty tree.
+     */
+    public FlatTree() {
+        this.kinds = new byte[1024];
+        this.firstChildren = new int[1024];
+        this.nextSiblings = new int[1024];
+        this.payloads = new int[1024];
+        this.size = 0;
+        this.values = new ArrayList<>();
+        this.valueIds = new HashMap<>();
+    }
+
+    /**
+     * This method creates a node without children.
+     *
+     * @param kind  the kind of the node.
+     * @param value the value of the node, or null.
+     * @return the new node.
+     */
+    public int add(LexicalUnit kind, String value) {
+        if (size == kinds.length) {
+            resize(size * 2);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        firstChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        payloads[size] = value == null ? NONE : valueId(value);
+        return size++;
+    }
+
+    /**
+     * This method makes a node the first child of another one, before its
+     * current children.
+     *
+     * @param parent the new parent.
+     * @param child  a node which is not yet a child.
+     */
+    public void prepend(int parent, int child) {
+        nextSiblings[child] = firstChildren[parent];
+        firstChildren[parent] = child;
+    }
+
+    /**
+     * This method creates a node with the given children.
+     *
+     * @param kind     the kind of the node.
+     * @param value    the value of the node, or null.
+     * @param children the children, which are not yet children of another node.
+     * @return the new node.
+     */
+    public int add(LexicalUnit kind, String value, int... children) {
+        int node = add(kind, value);
+        setChildren(node, children, 0, children.length);
+        return node;
+    }
+
+    /**
+     * This method replaces the children of a node.
+     *
+     * @param node     the parent.
+     * @param children an array holding the new children, which are not children
+     *                 of another node.
+     * @param from     the index of the first child in the array.
+     * @param to       the index following the last child in the array.
+     */
+    public void setChildren(int node, int[] children, int from, int to) {
+        firstChildren[node] = NONE;
+        for (int i = to - 1; i >= from; i--) {
+            prepend(node, children[i]);
+        }
+    }
+
+    /**
+     * This method copies all the nodes of another tree at the end of this one.
+     *
+     * @param other the tree to copy.
+     * @return the offset of the copied nodes: the node i of the other tree is
+     *         the node offset + i of this one.
+     */
+    public int append(FlatTree other) {
+        int offset = size;
+        if (size + other.size > kinds.length) {
+            resize(Math.max(size + other.size, size * 2));
+        }
+        int[] ids = new int[other.values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = valueId(other.values.get(i));
+        }
+        for (int i = 0; i < other.size; i++) {
+            kinds[size] = other.kinds[i];
+            firstChildren[size] = other.firstChildren[i] == NONE ? NONE : other.firstChildren[i] + offset;
+            nextSiblings[size] = other.nextSiblings[i] == NONE ? NONE : other.nextSiblings[i] + offset;
+            payloads[size] = other.payloads[i] == NONE ? NONE : ids[other.payloads[i]];
+            size++;
+        }
+        return offset;
+    }
+
+    private int valueId(String value) {
+        Integer id = valueIds.get(value);
+        if (id == null) {
+            id = values.size();
+            // interned so that the epsilon value "E" stays identical to the literal
+            values.add(value.intern());
+            valueIds.put(value, id);
+        }
+        return id;
+    }
+
+    private void resize(int capacity) {
+        kinds = Arrays.copyOf(kinds, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+    }
+
+    /**
+     * This method frees the unused capacity of the arrays.
+     */
+    public void trimToSize() {
+        if (size < kinds.length) {
+            resize(size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LexicalUnit getKind(int node) {
+        return UNITS[kinds[node]];
+    }
+
+    public String getValue(int node) {
+        return payloads[node] == NONE ? null : values.get(payloads[node]);
+    }
+
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * @param node a node.
+     * @param i    the position of a child, starting from 0.
+     * @return the i-th child of the node.
+     */
+    public int getChild(int node, int i) {
+        int child = firstChildren[node];
+        for (; i > 0; i--) {
+            child = nextSiblings[child];
+        }
+        return child;
+    }
+
+    public int getChildCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * This method walks the tree in depth-first order from the given node.
+     *
+     * @param root    the node to start from.
+     * @param visitor the visitor called on every node of the subtree.
+     */
+    public void walk(int root, Visitor visitor) {
+        int[] stack = new int[64];
+        int depth = 0;
+        visitor.enter(this, root);
+        stack[depth++] = root;
+        int next = firstChildren[root];
+        while (depth > 0) {
+            if (next != NONE) {
+                visitor.enter(this, next);
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = next;
+                next = firstChildren[next];
+            } else {
+                int node = stack[--depth];
+                visitor.leave(this, node);
+                next = depth > 0 ? nextSiblings[node] : NONE;
+            }
+        }
+    }
+
+    /**
+     * This method copies a ParseTree into a new FlatTree.
+     *
+     * @param tree the tree to copy.
+     * @return the flat tree, whose root is its last node.
+     */
+    public static FlatTree of(ParseTree tree) {
+        FlatTree flat = new FlatTree();
+        // the children are created before their parent, from the last one
+        ArrayList<ParseTree> pending = new ArrayList<>();
+        ArrayList<ParseTree> order = new ArrayList<>();
+        pending.add(tree);
+        while (!pending.isEmpty()) {
+            ParseTree t = pending.remove(pending.size() - 1);
+            order.add(t);
+            pending.addAll(t.getChildren());
+        }
+        HashMap<ParseTree, Integer> nodes = new HashMap<>();
+        for (int i = order.size() - 1; i >= 0; i--) {
+            ParseTree t = order.get(i);
+            Object value = t.getLabel().getValue();
+            int node = flat.add(t.getLabel().getType(), value == null ? null : value.toString());
+            List<ParseTree> children = t.getChildren();
+            for (int c = children.size() - 1; c >= 0; c--) {
+                flat.prepend(node, nodes.remove(children.get(c)));
+            }
+            nodes.put(t, node);
+        }
+        flat.trimToSize();
+        return flat;
+    }
+
+    /**
+     * This method copies a subtree into ParseTree nodes.
+     *
+     * @param root the root of the subtree.
+     * @return the ParseTree of the subtree.
+     */
+    public ParseTree toParseTree(int root) {
+        ParseTree[] trees = new ParseTree[size];
+        walk(root, new Visitor() {
+            @Override
+            public void enter(FlatTree tree, int node) {
+                trees[node] = new ParseTree(Symbol.label(getKind(node), getValue(node)));
+            }
+
+            @Override
+            public void leave(FlatTree tree, int node) {
+                if (firstChildren[node] == NONE) {
+                    return;
+                }
+                List<ParseTree> children = new ArrayList<>();
+                for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+                    children.add(trees[child]);
+                    trees[child] = null;
+                }
+                trees[node].setChildren(children);
+            }
+        });
+        return trees[root];
+    }
+}
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the LL(1) grammar of the FORTRESS language. The rules keep
+ * the numbers used in the left-most derivation (1 to 31). The parse table,
+ * giving the rule to apply for a variable and the next token, is computed once
+ * from the FIRST and FOLLOW sets of the rules, so that the table cannot drift
+ * from the rules.
+ */
+public class Grammar {
+    /**
+     * The number of the rules, which are numbered from 1.
+     */
+    public static final int RULE_COUNT = 31;
+
+    /**
+     * The value of the parse table when no rule applies, which is a syntax error.
+     */
+    public static final int NO_RULE = 0;
+
+    private static final LexicalUnit FIRST_VARIABLE = LexicalUnit.PROGRAM_;
+    private static final int TERMINAL_COUNT = LexicalUnit.EOS.ordinal() + 1;
+    private static final int VARIABLE_COUNT = LexicalUnit.READ_.ordinal() - FIRST_VARIABLE.ordinal() + 1;
+
+    private static final LexicalUnit[] LEFT = new LexicalUnit[RULE_COUNT + 1];
+    private static final LexicalUnit[][] RIGHT = new LexicalUnit[RULE_COUNT + 1][];
+    private static final String[] LABELS = new String[VARIABLE_COUNT];
+    private static final int[][] TABLE = new int[VARIABLE_COUNT][TERMINAL_COUNT];
+    private static final List<List<LexicalUnit>> EXPECTED = new ArrayList<>(VARIABLE_COUNT);
+
+    static {
+        rule(1, LexicalUnit.PROGRAM_, LexicalUnit.BEGIN, LexicalUnit.PROGNAME, LexicalUnit.CODE_, LexicalUnit.END);
+        rule(2, LexicalUnit.CODE_, LexicalUnit.INSTRUCTION_, LexicalUnit.COMMA, LexicalUnit.CODE_);
+        rule(3, LexicalUnit.CODE_);
+        rule(4, LexicalUnit.INSTRUCTION_, LexicalUnit.ASSIGN_);
+        rule(5, LexicalUnit.INSTRUCTION_, LexicalUnit.IF_);
+        rule(6, LexicalUnit.INSTRUCTION_, LexicalUnit.WHILE_);
+        rule(7, LexicalUnit.INSTRUCTION_, LexicalUnit.PRINT_);
+        rule(8, LexicalUnit.INSTRUCTION_, LexicalUnit.READ_);
+        rule(9, LexicalUnit.ASSIGN_, LexicalUnit.VARNAME, LexicalUnit.ASSIGN, LexicalUnit.EXPRARITH_);
+        rule(10, LexicalUnit.EXPRARITH_, LexicalUnit.MULDIV_, LexicalUnit.EXPRARITHQUOTE_);
+        rule(11, LexicalUnit.EXPRARITHQUOTE_, LexicalUnit.PLUS, LexicalUnit.MULDIV_, LexicalUnit.EXPRARITHQUOTE_);
+        rule(12, LexicalUnit.EXPRARITHQUOTE_, LexicalUnit.MINUS, LexicalUnit.MULDIV_, LexicalUnit.EXPRARITHQUOTE_);
+        rule(13, LexicalUnit.EXPRARITHQUOTE_);
+        rule(14, LexicalUnit.MULDIV_, LexicalUnit.ATOM_, LexicalUnit.MULDIVQUOTE_);
+        rule(15, LexicalUnit.MULDIVQUOTE_, LexicalUnit.TIMES, LexicalUnit.ATOM_, LexicalUnit.MULDIVQUOTE_);
+        rule(16, LexicalUnit.MULDIVQUOTE_, LexicalUnit.DIVIDE, LexicalUnit.ATOM_, LexicalUnit.MULDIVQUOTE_);
+        rule(17, LexicalUnit.MULDIVQUOTE_);
+        rule(18, LexicalUnit.ATOM_, LexicalUnit.MINUS, LexicalUnit.ATOM_);
+        rule(19, LexicalUnit.ATOM_, LexicalUnit.VARNAME);
+        rule(20, LexicalUnit.ATOM_, LexicalUnit.NUMBER);
+        rule(21, LexicalUnit.ATOM_, LexicalUnit.LPAREN, LexicalUnit.EXPRARITH_, LexicalUnit.RPAREN);
+        rule(22, LexicalUnit.IF_, LexicalUnit.IF, LexicalUnit.LPAREN, LexicalUnit.COND_, LexicalUnit.RPAREN,
+                LexicalUnit.THEN, LexicalUnit.CODE_, LexicalUnit.IFSEQ_);
+        rule(23, LexicalUnit.IFSEQ_, LexicalUnit.END);
+        rule(24, LexicalUnit.IFSEQ_, LexicalUnit.ELSE, LexicalUnit.CODE_, LexicalUnit.END);
+        rule(25, LexicalUnit.COND_, LexicalUnit.EXPRARITH_, LexicalUnit.COMP_, LexicalUnit.EXPRARITH_);
+        rule(26, LexicalUnit.COMP_, LexicalUnit.EQUAL);
+        rule(27, LexicalUnit.COMP_, LexicalUnit.GREATER);
+        rule(28, LexicalUnit.COMP_, LexicalUnit.SMALLER);
+        rule(29, LexicalUnit.WHILE_, LexicalUnit.WHILE, LexicalUnit.LPAREN, LexicalUnit.COND_, LexicalUnit.RPAREN,
+                LexicalUnit.DO, LexicalUnit.CODE_, LexicalUnit.END);
+        rule(30, LexicalUnit.PRINT_, LexicalUnit.PRINT, LexicalUnit.LPAREN, LexicalUnit.VARNAME, LexicalUnit.RPAREN);
+        rule(31, LexicalUnit.READ_, LexicalUnit.READ, LexicalUnit.LPAREN, LexicalUnit.VARNAME, LexicalUnit.RPAREN);
+
+        label(LexicalUnit.PROGRAM_, "<Program>");
+        label(LexicalUnit.CODE_, "<Code>");
+        label(LexicalUnit.INSTRUCTION_, "<Instruction>");
+        label(LexicalUnit.ASSIGN_, "<Assign>");
+        label(LexicalUnit.EXPRARITH_, "<ExprArith>");
+        label(LexicalUnit.EXPRARITHQUOTE_, "<ExprArith'>");
+        label(LexicalUnit.MULDIV_, "<MulDiv>");
+        label(LexicalUnit.MULDIVQUOTE_, "<MulDiv'>");
+        label(LexicalUnit.ATOM_, "<Atom>");
+        label(LexicalUnit.IF_, "<If>");
+        label(LexicalUnit.IFSEQ_, "<IfSeq>");
+        label(LexicalUnit.COND_, "<Cond>");
+        label(LexicalUnit.COMP_, "<Comp>");
+        label(LexicalUnit.WHILE_, "<While>");
+        label(LexicalUnit.PRINT_, "<Print>");
+        label(LexicalUnit.READ_, "<Read>");
+
+        buildTable();
+    }
+
+    private Grammar() {
+    }
+
+    private static void rule(int number, LexicalUnit left, LexicalUnit... right) {
+        LEFT[number] = left;
+        RIGHT[number] = right;
+    }
+
+    private static void label(LexicalUnit variable, String label) {
+        LABELS[index(variable)] = label;
+    }
+
+    private static int index(LexicalUnit variable) {
+        return variable.ordinal() - FIRST_VARIABLE.ordinal();
+    }
+
+    /**
+     * @param unit a lexical unit or a variable of the grammar.
+     * @return true if the unit is a token produced by the lexer.
+     */
+    public static boolean isTerminal(LexicalUnit unit) {
+        return unit.ordinal() < TERMINAL_COUNT;
+    }
+
+    /**
+     * @param rule the number of a rule.
+     * @return the variable on the left-hand side of the rule.
+     */
+    public static LexicalUnit getLeft(int rule) {
+        return LEFT[rule];
+    }
+
+    /**
+     * @param rule the number of a rule.
+     * @return the symbols on the right-hand side of the rule, empty for an
+     *         epsilon rule. The array must not be modified.
+     */
+    public static LexicalUnit[] getRight(int rule) {
+        return RIGHT[rule];
+    }
+
+    /**
+     * @param variable a variable of the grammar.
+     * @return the label of the nodes of the variable in the parse tree.
+     */
+    public static String getLabel(LexicalUnit variable) {
+        return LABELS[index(variable)];
+    }
+
+    /**
+     * @param variable the variable to derive.
+     * @param token    the type of the next token.
+     * @return the rule to apply, or NO_RULE if the token cannot follow.
+     */
+    public static int getRule(LexicalUnit variable, LexicalUnit token) {
+        return TABLE[index(variable)][token.ordinal()];
+    }
+
+    /**
+     * @param variable a variable of the grammar.
+     * @return the tokens for which a rule of the variable applies.
+     */
+    public static List<LexicalUnit> getExpected(LexicalUnit variable) {
+        return EXPECTED.get(index(variable));
+    }
+
+    /**
+     * This method fills the parse table from the FIRST and FOLLOW sets of the
+     * variables, which are computed by iterating until they do not change.
+     */
+    private static void buildTable() {
+        boolean[] nullable = new boolean[VARIABLE_COUNT];
+        boolean[][] first = new boolean[VARIABLE_COUNT][TERMINAL_COUNT];
+        boolean[][] follow = new boolean[VARIABLE_COUNT][TERMINAL_COUNT];
+        follow[index(FIRST_VARIABLE)][LexicalUnit.EOS.ordinal()] = true;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int rule = 1; rule <= RULE_COUNT; rule++) {
+                int left = index(LEFT[rule]);
+                LexicalUnit[] right = RIGHT[rule];
+                changed |= addFirst(first[left], right, 0, first, nullable);
+                if (!nullable[left] && isNullable(right, 0, nullable)) {
+                    nullable[left] = true;
+                    changed = true;
+                }
+                for (int i = 0; i < right.length; i++) {
+                    if (isTerminal(right[i])) {
+                        continue;
+                    }
+                    boolean[] target = follow[index(right[i])];
+                    changed |= addFirst(target, right, i + 1, first, nullable);
+                    if (isNullable(right, i + 1, nullable)) {
+                        changed |= addAll(target, follow[left]);
+                    }
+                }
+            }
+        }
+
+        for (int rule = 1; rule <= RULE_COUNT; rule++) {
+            int left = index(LEFT[rule]);
+            boolean[] lookahead = new boolean[TERMINAL_COUNT];
+            addFirst(lookahead, RIGHT[rule], 0, first, nullable);
+            if (isNullable(RIGHT[rule], 0, nullable)) {
+                addAll(lookahead, follow[left]);
+            }
+            for (int token = 0; token < TERMINAL_COUNT; token++) {
+                if (!lookahead[token]) {
+                    continue;
+                }
+                if (TABLE[left][token] != NO_RULE) {
+                    throw new IllegalStateException("The grammar is not LL(1): rules " + TABLE[left][token]
+                            + " and " + rule + " both apply on " + LexicalUnit.values()[token] + ".");
+                }
+                TABLE[left][token] = rule;
+            }
+        }
+
+        LexicalUnit[] units = LexicalUnit.values();
+        for (int variable = 0; variable < VARIABLE_COUNT; variable++) {
+            ArrayList<LexicalUnit> expected = new ArrayList<>();
+            for (int token = 0; token < TERMINAL_COUNT; token++) {
+                if (TABLE[variable][token] != NO_RULE) {
+                    expected.add(units[token]);
+                }
+            }
+            EXPECTED.add(expected);
+        }
+    }
+
+    /**
+     * This method adds to a set the FIRST set of the symbols following the given
+     * position in a right-hand side.
+     *
+     * @return true if the set has changed.
+     */
+    private static boolean addFirst(boolean[] set, LexicalUnit[] right, int from, boolean[][] first,
+            boolean[] nullable) {
+        boolean changed = false;
+        for (int i = from; i < right.length; i++) {
+            if (isTerminal(right[i])) {
+                changed |= !set[right[i].ordinal()];
+                set[right[i].ordinal()] = true;
+                return changed;
+            }
+            changed |= addAll(set, first[index(right[i])]);
+            if (!nullable[index(right[i])]) {
+                return changed;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return true if all the symbols following the given position can derive
+     *         the empty word.
+     */
+    private static boolean isNullable(LexicalUnit[] right, int from, boolean[] nullable) {
+        for (int i = from; i < right.length; i++) {
+            if (isTerminal(right[i]) || !nullable[index(right[i])]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the set has changed.
+     */
+    private static boolean addAll(boolean[] set, boolean[] other) {
+        boolean changed = false;
+        for (int i = 0; i < set.length; i++) {
+            if (other[i] && !set[i]) {
+                set[i] = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,40 @@
+import java.io.StringReader;
+
+/**
+ * This class measures the time taken by the Lexer on generated programs in
+ * which every assignment uses a new variable, so that the number of distinct
+ * identifiers grows with the size of the program. The time of the sorted
+ * list of the variables, which is only built when it is asked for, is given
+ * apart. The largest number of identifiers is given as argument (1000000 by
+ * default); the programs have 20000, 100000 and 1000000 identifiers, up to
+ * it. With the IdentifierTable, the time per identifier stays about the same.
+ */
+public class IdentifierBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        for (int n : new int[] { 20000, 100000, 1000000 }) {
+            if (n > max) {
+                break;
+            }
+            StringBuilder source = new StringBuilder("BEGIN Benchmark\n");
+            for (int i = 0; i < n; i++) {
+                source.append("  v").append(i).append(" := ").append(i % 1000).append(" ,\n");
+            }
+            source.append("END");
+
+            // the first program also warms up the lexer
+            long start = System.nanoTime();
+            Lexer lexer = new Lexer(new StringReader(source.toString()));
+            while (lexer.yylex().getType() != LexicalUnit.EOS) {
+            }
+            long lexing = System.nanoTime() - start;
+            start = System.nanoTime();
+            int variables = lexer.getVariables().size();
+            long sorting = System.nanoTime() - start;
+
+            System.out.println(variables + " identifiers: lexing " + lexing / 1000000 + " ms ("
+                    + lexing / n + " ns per identifier), sorted list " + sorting / 1000000 + " ms");
+        }
+    }
+}
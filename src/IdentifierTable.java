@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * This class interns the names of the variables met by the lexer.
+ * Each distinct name receives a dense id (0, 1, 2, ...) in order of first
+ * occurrence, and the position of this first occurrence is kept.
+ */
+public class IdentifierTable {
+    private HashMap<String, Integer> ids;
+    private ArrayList<String> names;
+    private long[] offsets;
+
+    /**
+     * Constructor of the class. It creates an empty table.
+     */
+    public IdentifierTable() {
+        this.ids = new HashMap<>();
+        this.names = new ArrayList<>();
+        this.offsets = new long[16];
+    }
+
+    /**
+     * This method returns the id of the given name, and registers it with the
+     * given position if it is the first time that the name is met.
+     *
+     * @param name   the name of the variable.
+     * @param offset the offset of the occurrence in the source.
+     * @return the id of the name.
+     */
+    public int intern(String name, long offset) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int newId = names.size();
+        if (newId == offsets.length) {
+            offsets = Arrays.copyOf(offsets, newId * 2);
+        }
+        ids.put(name, newId);
+        names.add(name);
+        offsets[newId] = offset;
+        return newId;
+    }
+
+    /**
+     * @param name the name of a variable.
+     * @return the id of the name, or Symbol.NO_ID if it has never been met.
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : Symbol.NO_ID;
+    }
+
+    /**
+     * @return the number of distinct names in the table.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @param id the id of a name.
+     * @return the name corresponding to the id.
+     */
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * @param id the id of a name.
+     * @return the offset of the first occurrence of the name.
+     */
+    public long getOffset(int id) {
+        return offsets[id];
+    }
+
+    /**
+     * This method builds the list of the variables, sorted by name, with the
+     * position of their first occurrence. It is only computed when asked for.
+     *
+     * @return the sorted list of the variables.
+     */
+    public ArrayList<Symbol> getSortedVariables() {
+        ArrayList<Symbol> variables = new ArrayList<>(names.size());
+        for (int id = 0; id < names.size(); id++) {
+            variables.add(new Symbol(LexicalUnit.VARNAME, offsets[id], names.get(id), id));
+        }
+        Collections.sort(variables, new Comparator<Symbol>() {
+            @Override
+            public int compare(Symbol s1, Symbol s2) {
+                return s1.getValue().toString().compareTo(s2.getValue().toString());
+            }
+        });
+        return variables;
+    }
+}
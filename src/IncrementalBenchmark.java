@@ -0,0 +1,57 @@
+/**
+ * This class measures the time taken by the IncrementalParser to update the
+ * parse tree of a large program after small edits, compared to the time of
+ * the first, whole parse. The number of lines of the generated program is
+ * given as argument (200000 by default).
+ */
+public class IncrementalBenchmark {
+    private static final int EDITS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        StringBuilder source = new StringBuilder("BEGIN Benchmark\n  READ(y) ,\n");
+        int[] lineStarts = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            source.append("  ");
+            lineStarts[i] = source.length();
+            source.append("x").append(i % 100).append(" := y + ").append(i).append(" ,\n");
+        }
+        source.append("END");
+
+        long start = System.nanoTime();
+        IncrementalParser parser = new IncrementalParser(source);
+        System.out.println("whole parse: " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // warm up, then measure the edits
+        edit(parser, lineStarts, EDITS);
+        start = System.nanoTime();
+        edit(parser, lineStarts, EDITS);
+        System.out.println("edit: " + (System.nanoTime() - start) / 1000 / (6 * EDITS) + " us on average");
+    }
+
+    /**
+     * This method changes a number in the middle of the program and changes it
+     * back, then inserts an instruction and removes it, and the same with an
+     * instruction declaring a new variable, on the given number of lines. The
+     * text is the same at the end.
+     */
+    private static void edit(IncrementalParser parser, int[] lineStarts, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            int line = lineStarts.length / 2 + i;
+            String number = Integer.toString(line);
+            String changed = Integer.toString(line + 1);
+            int offset = lineStarts[line] + ("x" + line % 100 + " := y + ").length();
+            parser.edit(offset, number.length(), changed);
+            parser.edit(offset, changed.length(), number);
+
+            String instruction = "PRINT(y) ,\n  ";
+            parser.edit(lineStarts[line], 0, instruction);
+            parser.edit(lineStarts[line], instruction.length(), "");
+
+            // a new variable, declared for the first time in the middle
+            instruction = "z := y ,\n  ";
+            parser.edit(lineStarts[line], 0, instruction);
+            parser.edit(lineStarts[line], instruction.length(), "");
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class checks the IncrementalParser against a whole parse: after each
+ * edit, the parse tree it gives, or the error it throws, must be the one given
+ * by a new Parser on the whole text. It first runs some edits known to be hard
+ * for the incremental checks, then random edits of a generated program, which
+ * often break the program and repair it. The number of random edits and the
+ * seed are given as arguments (2000 and 1 by default). It exits with status 1
+ * if an edit gives a different result.
+ */
+public class IncrementalCheck {
+    private static final String[] SNIPPETS = { "x", "1", " ", ",", "a := 3 ,\n", "PRINT(a) ,\n", "READ(c) ,\n",
+            "c := c + 1 ,\n", "%%", "::", "\n", "END", "WHILE (a > 0) DO\n", "(", ")", "b", "q := 2 ,", "-",
+            "READ", "PRINT", ":=", "=" };
+    private static final String[] INSTRUCTIONS = { "a := 3 ,\n", "PRINT(a) ,\n", "READ(a) ,\n",
+            "IF (a > 1) THEN b := 2 , END ,\n", "WHILE (a > 9) DO a := a - 1 , END ,\n", "zz := 4 ,\n" };
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        int edits = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        // the declaration of a is removed without touching a variable
+        check("BEGIN Check\n  READ(a) ,\n  PRINT(a) ,\nEND\n", "READ", "PRINT");
+        check("BEGIN Check\n  a := 1 ,\n  PRINT(a) ,\nEND\n", ":=", "=");
+        check("BEGIN Check\n  READ(a) ,\n  IF (a > 0) THEN PRINT(a) , END ,\nEND\n", "READ", "PRINT");
+        // and added back
+        IncrementalParser parser = check("BEGIN Check\n  READ(a) ,\n  READ(b) ,\n  PRINT(b) ,\nEND\n",
+                "READ(b)", "PRINT(b)");
+        String text = parser.getText().toString();
+        edit(parser, text.indexOf("PRINT(b)"), "PRINT".length(), "READ");
+        // the first declaration of a moves to the next instruction, then a use is
+        // added before it
+        parser = check("BEGIN Check\n  READ(a) ,\n  a := 1 ,\n  PRINT(a) ,\nEND\n", "READ(a)", "PRINT(1)");
+        text = parser.getText().toString();
+        edit(parser, text.indexOf("PRINT(1)") + "PRINT(".length(), 1, "a");
+
+        StringBuilder source = new StringBuilder("BEGIN Check\n  READ(a) ,\n  READ(b) ,\n  READ(c) ,\n");
+        for (int i = 0; i < 200; i++) {
+            source.append("  x").append(i % 10).append(" := (a + ").append(i).append(") * b - c ,\n");
+            if (i % 20 == 0) {
+                source.append("  WHILE (a > ").append(i).append(") DO\n    a := a - 1 ,\n  END ,\n");
+            }
+        }
+        source.append("END\n");
+        randomEdits(source.toString(), edits, new Random(seed));
+
+        System.out.println(failures == 0 ? "all edits agree with a whole parse" : failures + " edits differ");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method replaces the first occurrence of a string in a program, and
+     * compares the result of the IncrementalParser with a whole parse.
+     *
+     * @return the IncrementalParser, for more edits.
+     */
+    private static IncrementalParser check(String text, String target, String replacement) throws Exception {
+        IncrementalParser parser = new IncrementalParser(text);
+        edit(parser, text.indexOf(target), target.length(), replacement);
+        return parser;
+    }
+
+    /**
+     * This method makes random edits: snippets inserted or characters removed
+     * anywhere, instructions inserted, numbers changed and lines removed. Most of
+     * the edits which remove or replace characters are undone by the next one.
+     */
+    private static void randomEdits(String text, int edits, Random random) throws Exception {
+        IncrementalParser parser = new IncrementalParser(text);
+        String undo = null;
+        int undoOffset = 0;
+        int undoLength = 0;
+        for (int e = 0; e < edits; e++) {
+            String current = parser.getText().toString();
+            if (undo != null) {
+                edit(parser, undoOffset, undoLength, undo);
+                undo = null;
+                continue;
+            }
+            int offset;
+            int removed;
+            String inserted;
+            switch (random.nextInt(4)) {
+                case 0:
+                    offset = random.nextInt(current.length() + 1);
+                    removed = random.nextInt(4) == 0 ? Math.min(random.nextInt(12), current.length() - offset) : 0;
+                    inserted = random.nextInt(5) == 0 ? "" : SNIPPETS[random.nextInt(SNIPPETS.length)];
+                    undo = current.substring(offset, offset + removed);
+                    undoOffset = offset;
+                    undoLength = inserted.length();
+                    break;
+                case 1:
+                    int lineEnd = current.indexOf('\n', random.nextInt(current.length()));
+                    offset = lineEnd < 0 ? 0 : lineEnd + 1;
+                    removed = 0;
+                    inserted = INSTRUCTIONS[random.nextInt(INSTRUCTIONS.length)];
+                    break;
+                case 2:
+                    offset = -1;
+                    for (int t = 0; t < 20 && offset < 0; t++) {
+                        int i = random.nextInt(current.length());
+                        if (Character.isDigit(current.charAt(i))) {
+                            offset = i;
+                        }
+                    }
+                    if (offset < 0) {
+                        continue;
+                    }
+                    removed = 1;
+                    inserted = Integer.toString(random.nextInt(100));
+                    break;
+                default:
+                    int start = current.indexOf('\n', random.nextInt(current.length()));
+                    int end = start < 0 ? -1 : current.indexOf('\n', start + 1);
+                    if (end < 0) {
+                        continue;
+                    }
+                    offset = start + 1;
+                    removed = end - start;
+                    inserted = "";
+                    undo = current.substring(offset, offset + removed);
+                    undoOffset = offset;
+                    undoLength = 0;
+            }
+            edit(parser, offset, removed, inserted);
+        }
+    }
+
+    /**
+     * This method makes an edit and compares its result with a whole parse of the
+     * new text.
+     */
+    private static void edit(IncrementalParser parser, int offset, int removed, String inserted) {
+        String text = parser.getText().toString();
+        String expectedText = text.substring(0, offset) + inserted + text.substring(offset + removed);
+        String result;
+        try {
+            result = dump(parser.edit(offset, removed, inserted));
+        } catch (Exception | Error e) {
+            result = "error: " + e.getMessage();
+        }
+        String expected = parse(expectedText);
+        if (!parser.getText().toString().equals(expectedText) || !result.equals(expected)) {
+            failures++;
+            System.out.println("Edit at " + offset + " replacing " + removed + " characters by \""
+                    + inserted.replace("\n", "\\n") + "\":");
+            System.out.println("  expected " + summary(expected));
+            System.out.println("  got      " + summary(result));
+        }
+    }
+
+    private static String parse(String text) {
+        try {
+            Lexer lexer = new Lexer(new StringReader(text));
+            lexer.setLineIndex(LineIndex.of(text));
+            // the whole text is lexed first, as by the IncrementalParser, so that
+            // the lexical errors are reported before the syntax errors
+            Parser parser = new Parser(new TokenStream(TokenBuffer.lex(lexer, text)));
+            parser.parse();
+            return dump(parser.getParseTree());
+        } catch (Exception | Error e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    private static String summary(String result) {
+        return result.startsWith("error: ") ? result : "a parse tree";
+    }
+
+    /**
+     * @return the labels of the tree in prefix order, with parentheses around the
+     *         children of each node.
+     */
+    private static String dump(ParseTree tree) {
+        StringBuilder dump = new StringBuilder();
+        List<Object> pending = new ArrayList<>();
+        pending.add(tree);
+        while (!pending.isEmpty()) {
+            Object o = pending.remove(pending.size() - 1);
+            if (o instanceof String s) {
+                dump.append(s);
+                continue;
+            }
+            ParseTree t = (ParseTree) o;
+            dump.append(t.getLabel().getType()).append(':').append(t.getLabel().getValue()).append('(');
+            pending.add(")");
+            for (int i = t.getChildren().size() - 1; i >= 0; i--) {
+                pending.add(t.getChildren().get(i));
+            }
+        }
+        return dump.toString();
+    }
+}
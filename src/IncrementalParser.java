@@ -0,0 +1,547 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class keeps the text, the tokens and the parse tree of a program, and
+ * updates them after each edit of the text instead of lexing and parsing the
+ * whole program again.
+ * The lexer is restarted at the first token which the edit may change, and
+ * stops as soon as it finds again a token of the previous stream, at the same
+ * place after the edit: since the lexer is between two tokens in its initial
+ * state, all the following tokens are the same. The tokens are then spliced
+ * into the TokenBuffer.
+ * The instructions of the main code block are re-parsed from the one holding
+ * the first new token, until the parser reaches the start of an instruction
+ * following the new tokens. The <Code> nodes of the re-parsed instructions are
+ * replaced in the parse tree, and the other subtrees are kept as they are.
+ * An edit of the header or of the END of the program, or an edit which does
+ * not give back an instruction boundary, falls back to a whole parse.
+ * The variables are checked on the tokens: a variable is declared when it is
+ * followed by := or read. The variables declared by each instruction of the
+ * main code block, the ones it uses before declaring them, and the first
+ * instruction declaring each variable are kept, so that only the re-parsed
+ * instructions, and the ones between them and the new first declaration of a
+ * variable whose declaration was removed, are checked again.
+ */
+public class IncrementalParser {
+    private StringBuilder text;
+    private TokenBuffer tokens;
+    private ParseTree parseTree;
+    // The <Code> nodes of the main code block, the last one being the empty one
+    private ArrayList<ParseTree> codeNodes;
+    // The index of the first token of each instruction of the main code block,
+    // the last one being the index of the END of the program
+    private int[] instructionStarts;
+    private int instructionCount;
+    // The ids of the variables declared by each instruction of the main code
+    // block, and of the ones it uses before declaring them, in the order of the
+    // tokens
+    private ArrayList<int[]> declaredIds;
+    private ArrayList<int[]> usedIds;
+    // The index of the first instruction declaring each variable, by id, or NONE,
+    // and the number of times each variable appears in the two lists above
+    private int[] firstDeclarations;
+    private int[] references;
+    // The re-parsed instructions, and the variables whose first declaration was
+    // in the instructions they replace and is not in them any more
+    private int checkFrom;
+    private int checkTo;
+    private HashSet<Integer> movedIds;
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /**
+     * Constructor of the class. It lexes and parses the whole text.
+     *
+     * @param source the text of the program.
+     * @throws Exception if the program is not correct.
+     */
+    public IncrementalParser(CharSequence source) throws Exception {
+        this.text = new StringBuilder(source);
+        this.codeNodes = new ArrayList<>();
+        this.instructionStarts = new int[16];
+        this.declaredIds = new ArrayList<>();
+        this.usedIds = new ArrayList<>();
+        this.firstDeclarations = new int[16];
+        this.references = new int[16];
+        this.movedIds = new HashSet<>();
+        parseAll();
+    }
+
+    /**
+     * @return the parse tree of the current text, or null if it is not correct.
+     */
+    public ParseTree getParseTree() {
+        return parseTree;
+    }
+
+    /**
+     * @return the tokens of the current text.
+     */
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the current text.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * This method replaces a part of the text and updates the tokens and the
+     * parse tree. If the new text is not correct, the exception is thrown, and
+     * the next edit parses the whole text again.
+     *
+     * @param offset   the offset of the first character to replace.
+     * @param removed  the number of characters to replace.
+     * @param inserted the new characters.
+     * @return the parse tree of the new text.
+     * @throws Exception if the new text is not correct.
+     */
+    public ParseTree edit(int offset, int removed, String inserted) throws Exception {
+        if (parseTree == null) {
+            text.replace(offset, offset + removed, inserted);
+            return parseAll();
+        }
+        int editEnd = offset + removed;
+        int shift = inserted.length() - removed;
+
+        // The tokens ending before the edit (with one character between them,
+        // read by the lexer to end the token) are not changed.
+        int first = firstTokenEndingAfter(offset);
+        int restart = first == 0 ? 0 : tokens.getStart(first - 1) + tokens.getLength(first - 1);
+
+        text.replace(offset, editEnd, inserted);
+        tokens.setLineIndex(LineIndex.of(text));
+
+        TokenBuffer lexed = new TokenBuffer(text, tokens.getIdentifiers(), tokens.getLineIndex());
+        int old;
+        try {
+            old = relex(restart, first, editEnd, shift, lexed);
+        } catch (Exception | Error e) {
+            parseTree = null;
+            throw e;
+        }
+        tokens.splice(first, old, lexed, shift);
+
+        try {
+            if (!reparse(first, old, lexed.size())) {
+                return parseAll();
+            }
+        } catch (Exception e) {
+            return parseAll();
+        }
+        try {
+            checkVariables();
+        } catch (Exception e) {
+            parseTree = null;
+            throw e;
+        }
+        return parseTree;
+    }
+
+    /**
+     * This method lexes the text from an offset at which the lexer is between two
+     * tokens, until it finds a token of the old stream, moved by the edit.
+     *
+     * @param restart the offset to start from.
+     * @param first   the index of the first old token which may be changed.
+     * @param editEnd the offset following the replaced characters, before the edit.
+     * @param shift   the number of characters added by the edit.
+     * @param lexed   the buffer receiving the new tokens.
+     * @return the index of the first old token kept after the new tokens.
+     */
+    private int relex(int restart, int first, int editEnd, int shift, TokenBuffer lexed) throws IOException {
+        Lexer lexer = new Lexer(new TextReader(text, restart));
+        lexer.setLineIndex(tokens.getLineIndex());
+        lexer.startChunk(restart, false, true);
+        int old = first;
+        while (old < tokens.size() && tokens.getStart(old) < editEnd) {
+            old++;
+        }
+        while (true) {
+            Symbol token = lexer.yylex();
+            int start = (int) lexer.getOffset();
+            while (old < tokens.size() - 1 && tokens.getStart(old) + shift < start) {
+                old++;
+            }
+            if (tokens.getStart(old) + shift == start && tokens.getType(old) == token.getType()
+                    && tokens.getLength(old) == lexer.yylength()) {
+                return old;
+            }
+            lexed.add(token.getType(), start, lexer.yylength());
+        }
+    }
+
+    /**
+     * This method re-parses the instructions of the main code block holding new
+     * tokens, and replaces their subtrees.
+     *
+     * @param first    the index of the first new token.
+     * @param old      the index, before the edit, of the first token kept after them.
+     * @param newCount the number of new tokens.
+     * @return false if the new tokens are not inside the main code block, or if
+     *         the parser did not find an instruction boundary after them.
+     */
+    private boolean reparse(int first, int old, int newCount) throws Exception {
+        int[] starts = instructionStarts;
+        int n = instructionCount;
+        if (first < starts[0] || old > starts[n]) {
+            return false;
+        }
+        int delta = newCount - (old - first);
+        // the instruction holding the first new token, or the END of the program
+        int k = Arrays.binarySearch(starts, 0, n + 1, first);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        // the first boundary which may be found again
+        int j = Arrays.binarySearch(starts, k, n + 1, old);
+        if (j < 0) {
+            j = -j - 1;
+        }
+
+        TokenStream stream = new TokenStream(tokens, starts[k]);
+        Parser parser = new Parser(stream);
+        parser.setVariableChecks(false);
+        ArrayList<ParseTree> items = new ArrayList<>();
+        int[] itemStarts = new int[4];
+        int position = starts[k];
+        while (true) {
+            while (j <= n && starts[j] + delta < position) {
+                j++;
+            }
+            if (j > n) {
+                return false;
+            }
+            if (starts[j] + delta == position) {
+                break;
+            }
+            if (items.size() == itemStarts.length) {
+                itemStarts = Arrays.copyOf(itemStarts, items.size() * 2);
+            }
+            itemStarts[items.size()] = position;
+            items.add(parser.parseCodeItem());
+            position = stream.getPosition();
+        }
+
+        // link the new <Code> nodes to each other and to the kept ones
+        ParseTree next = codeNodes.get(j);
+        for (int i = items.size() - 1; i >= 0; i--) {
+            items.get(i).getChildren().add(next);
+            next = items.get(i);
+        }
+        ParseTree parent = k == 0 ? parseTree : codeNodes.get(k - 1);
+        parent.getChildren().set(2, next);
+
+        replace(codeNodes, k, j, items);
+        int count = items.size();
+        if (count == itemStarts.length) {
+            itemStarts = Arrays.copyOf(itemStarts, count + 1);
+        }
+        itemStarts[count] = position;
+        replaceVariables(k, j, itemStarts, count);
+        int newN = n - (j - k) + count;
+        if (newN + 1 > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(newN + 1, starts.length * 2));
+        }
+        System.arraycopy(starts, j, starts, k + count, n + 1 - j);
+        System.arraycopy(itemStarts, 0, starts, k, count);
+        for (int i = k + count; i <= newN; i++) {
+            starts[i] += delta;
+        }
+        instructionStarts = starts;
+        instructionCount = newN;
+        return true;
+    }
+
+    /**
+     * This method replaces the elements of a list from an index to another one
+     * by the given ones. The following elements are only moved if the number of
+     * elements changes.
+     */
+    private static <T> void replace(ArrayList<T> list, int from, int to, List<T> items) {
+        int common = Math.min(to - from, items.size());
+        for (int i = 0; i < common; i++) {
+            list.set(from + i, items.get(i));
+        }
+        if (to - from > common) {
+            list.subList(from + common, to).clear();
+        } else if (items.size() > common) {
+            list.addAll(from + common, items.subList(common, items.size()));
+        }
+    }
+
+    /**
+     * This method lexes and parses the whole text.
+     *
+     * @return the parse tree of the text.
+     * @throws Exception if the text is not correct.
+     */
+    private ParseTree parseAll() throws Exception {
+        parseTree = null;
+        Lexer lexer = new Lexer(new TextReader(text, 0));
+        lexer.setLineIndex(LineIndex.of(text));
+        tokens = TokenBuffer.lex(lexer, text);
+        // the parser checks the variables itself, so that an undeclared variable
+        // is reported before a syntax error which follows it, as by a whole parse
+        Parser parser = new Parser(new TokenStream(tokens));
+        parser.parse();
+        ParseTree tree = parser.getParseTree();
+
+        codeNodes.clear();
+        declaredIds.clear();
+        usedIds.clear();
+        instructionCount = 0;
+        int position = 2;
+        ParseTree code = tree.getChild(2);
+        while (code.getChildren().size() == 3) {
+            addInstruction(code, position);
+            position += countTokens(code.getChild(0)) + 1;
+            code = code.getChild(2);
+        }
+        addInstruction(code, position);
+        instructionCount--;
+
+        Arrays.fill(firstDeclarations, NONE);
+        Arrays.fill(references, 0);
+        for (int i = 0; i < instructionCount; i++) {
+            addVariables(instructionStarts[i], instructionStarts[i + 1], declaredIds, usedIds);
+            for (int id : declaredIds.get(i)) {
+                if (firstDeclarations[id] == NONE) {
+                    firstDeclarations[id] = i;
+                }
+            }
+        }
+        // the empty <Code> node of the end of the block
+        addVariables(0, 0, declaredIds, usedIds);
+        movedIds.clear();
+
+        parseTree = tree;
+        return tree;
+    }
+
+    private void addInstruction(ParseTree code, int start) {
+        if (instructionCount == instructionStarts.length) {
+            instructionStarts = Arrays.copyOf(instructionStarts, instructionCount * 2);
+        }
+        instructionStarts[instructionCount++] = start;
+        codeNodes.add(code);
+    }
+
+    /**
+     * @param tree a parse tree.
+     * @return the number of tokens matched in the tree.
+     */
+    private static int countTokens(ParseTree tree) {
+        int count = 0;
+        ArrayList<ParseTree> pending = new ArrayList<>();
+        pending.add(tree);
+        while (!pending.isEmpty()) {
+            ParseTree t = pending.remove(pending.size() - 1);
+            if (t.getChildren().isEmpty()) {
+                if (t.getLabel().getType() != LexicalUnit.EPSILON) {
+                    count++;
+                }
+            } else {
+                pending.addAll(t.getChildren());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the index of the first token ending at or after the given offset.
+     */
+    private int firstTokenEndingAfter(int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.getStart(middle) + tokens.getLength(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * This method replaces the variables of the instructions from k to j by the
+     * ones of the re-parsed instructions, and updates the first declarations.
+     * The instructions which follow them are not moved yet.
+     *
+     * @param k          the index of the first replaced instruction.
+     * @param j          the index following the last replaced instruction.
+     * @param itemStarts the index of the first token of each new instruction,
+     *                   followed by the index of the token following them.
+     * @param count      the number of new instructions.
+     */
+    private void replaceVariables(int k, int j, int[] itemStarts, int count) {
+        movedIds.clear();
+        for (int i = k; i < j; i++) {
+            for (int id : declaredIds.get(i)) {
+                references[id]--;
+                if (firstDeclarations[id] == i) {
+                    firstDeclarations[id] = NONE;
+                    movedIds.add(id);
+                }
+            }
+            for (int id : usedIds.get(i)) {
+                references[id]--;
+            }
+        }
+        int delta = count - (j - k);
+        if (delta != 0) {
+            for (int id = 0; id < firstDeclarations.length; id++) {
+                if (firstDeclarations[id] >= j && firstDeclarations[id] != NONE) {
+                    firstDeclarations[id] += delta;
+                }
+            }
+        }
+
+        ArrayList<int[]> declared = new ArrayList<>(count);
+        ArrayList<int[]> used = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addVariables(itemStarts[i], itemStarts[i + 1], declared, used);
+            for (int id : declared.get(i)) {
+                if (firstDeclarations[id] > k + i) {
+                    firstDeclarations[id] = k + i;
+                    movedIds.remove(id);
+                }
+            }
+        }
+        replace(declaredIds, k, j, declared);
+        replace(usedIds, k, j, used);
+        checkFrom = k;
+        checkTo = k + count;
+    }
+
+    /**
+     * This method adds to the lists the variables declared by the tokens of an
+     * instruction, and the ones it uses before declaring them.
+     *
+     * @param from     the index of the first token of the instruction.
+     * @param to       the index following its last token.
+     * @param declared the list receiving the ids of the declared variables.
+     * @param used     the list receiving the ids of the used variables.
+     */
+    private void addVariables(int from, int to, ArrayList<int[]> declared, ArrayList<int[]> used) {
+        IdentifierTable identifiers = tokens.getIdentifiers();
+        HashSet<Integer> declaredSet = new HashSet<>();
+        HashSet<Integer> usedSet = new HashSet<>();
+        ArrayList<Integer> usedInOrder = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            if (tokens.getType(i) != LexicalUnit.VARNAME) {
+                continue;
+            }
+            int id = identifiers.intern(tokens.getText(i), tokens.getStart(i));
+            if (tokens.getType(i + 1) == LexicalUnit.ASSIGN
+                    || i >= 2 && tokens.getType(i - 1) == LexicalUnit.LPAREN
+                            && tokens.getType(i - 2) == LexicalUnit.READ) {
+                declaredSet.add(id);
+            } else if (!declaredSet.contains(id) && usedSet.add(id)) {
+                usedInOrder.add(id);
+            }
+        }
+        if (identifiers.size() > firstDeclarations.length) {
+            int length = firstDeclarations.length;
+            firstDeclarations = Arrays.copyOf(firstDeclarations, Math.max(identifiers.size(), length * 2));
+            Arrays.fill(firstDeclarations, length, firstDeclarations.length, NONE);
+            references = Arrays.copyOf(references, firstDeclarations.length);
+        }
+        for (int id : declaredSet) {
+            references[id]++;
+        }
+        for (int id : usedInOrder) {
+            references[id]++;
+        }
+        declared.add(toArray(declaredSet));
+        used.add(toArray(usedInOrder));
+    }
+
+    private static int[] toArray(Collection<Integer> ids) {
+        int[] array = new int[ids.size()];
+        int i = 0;
+        for (int id : ids) {
+            array[i++] = id;
+        }
+        return array;
+    }
+
+    /**
+     * This method checks that the variables are declared before being used, in
+     * the order of the tokens, as the parser does. Only the re-parsed
+     * instructions are checked, and the following ones up to the new first
+     * declaration of the variables whose first declaration was removed.
+     *
+     * @throws Exception if a variable is used before being declared.
+     */
+    private void checkVariables() throws Exception {
+        // a variable which does not appear any more is neither declared nor used
+        movedIds.removeIf(id -> references[id] == 0);
+        for (int i = checkFrom; i < checkTo; i++) {
+            for (int id : usedIds.get(i)) {
+                if (firstDeclarations[id] >= i) {
+                    throw undeclared(id);
+                }
+            }
+        }
+        for (int i = checkTo; i < instructionCount && !movedIds.isEmpty(); i++) {
+            for (int id : usedIds.get(i)) {
+                if (movedIds.contains(id)) {
+                    throw undeclared(id);
+                }
+            }
+            for (int id : declaredIds.get(i)) {
+                if (movedIds.remove(id)) {
+                    firstDeclarations[id] = i;
+                }
+            }
+        }
+        movedIds.clear();
+    }
+
+    private Exception undeclared(int id) {
+        return new Exception("Variable " + tokens.getIdentifiers().getName(id) + " is not declared");
+    }
+
+    /**
+     * This class reads the text from an offset, without copying it.
+     */
+    private static class TextReader extends Reader {
+        private CharSequence text;
+        private int position;
+
+        TextReader(CharSequence text, int position) {
+            this.text = text;
+            this.position = position;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            int end = Math.min(text.length(), position + len);
+            if (position >= end) {
+                return len == 0 ? 0 : -1;
+            }
+            for (int i = position; i < end; i++) {
+                cbuf[off++] = text.charAt(i);
+            }
+            int count = end - position;
+            position = end;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,33 +1,55 @@
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 public class LLVMGenerator {
 
-    private ParseTree pt; //parse tree to generate LLVM code from
+    private Ast.Program program; //typed tree to generate LLVM code from
     private String result; //result of the LLVM code generation
-    private ArrayList<String> variablesName; //list of variables names
+    private SymbolTable symbols; //variables of the program
+    private ExprTable exprs; //table which built the expressions, or null
+    private HashMap<Ast.Expr, String> computed; //values of the repeated operations of the current instruction
+    private boolean[] allocated; //variables already allocated, by id
     private int generateNewVariableNameCounter; //counter for new variables
     private int ifCounter; //counter for if statements
     private int whileCounter; //counter for while statements
 
     /**
      * Constructor of the LLVMGenerator class.
-     * @param pt the parse tree to generate LLVM code from
+     * @param program the typed tree to generate LLVM code from
+     * @param symbols the variables of the program
      */
-    public LLVMGenerator(ParseTree pt){
-        this.pt = pt;
+    public LLVMGenerator(Ast.Program program, SymbolTable symbols){
+        this(program, symbols, null);
+    }
+
+    /**
+     * Constructor of the LLVMGenerator class.
+     * An operation built more than once by the table is only computed once in an
+     * assignment or a condition, whose code has no store and no jump: its value is
+     * reused by the next occurrences.
+     * @param program the typed tree to generate LLVM code from
+     * @param symbols the variables of the program
+     * @param exprs the table which built the expressions of the typed tree, or null
+     */
+    public LLVMGenerator(Ast.Program program, SymbolTable symbols, ExprTable exprs){
+        this.program = program;
         this.result = new String();
         this.generateNewVariableNameCounter = 0;
         this.ifCounter = 0;
         this.whileCounter = 0;
-        this.variablesName = new ArrayList<String>();
+        this.symbols = symbols;
+        this.exprs = exprs;
+        this.computed = new HashMap<>();
+        this.allocated = new boolean[symbols.size()];
     }
 
     /**
-     * Getter for the parse tree.
-     * @return the parse tree
+     * Getter for the typed tree.
+     * @return the typed tree
      */
-    public ParseTree getParseTree(){
-        return this.pt;
+    public Ast.Program getProgram(){
+        return this.program;
     }
 
     /**
@@ -44,7 +66,7 @@ public class LLVMGenerator {
      * Then, it generates the main function.
      */
     public void generateCorrespondingLLVM(){
-        this.result += "; This is the code corresponding to the "+this.pt.getChild(1).getLabel().getValue()+" program.\n";
+        this.result += "; This is the code corresponding to the "+this.program.name()+" program.\n";
         this.result += ";--------------------------------------------\n";
         this.result += ";First, we define read and print functions\n\n";
         this.result += generateReadFunction();
@@ -53,36 +75,29 @@ public class LLVMGenerator {
         this.result += ";Then, we define the main function\n";
         this.result += ";==============================================================================\n\n";
         this.result += "define i32 @main() {\n";
-        this.result += code(pt.getChild(2));
+        this.result += code(program.code());
         this.result += "ret i32 0\n";
         this.result += "}";
     }
 
     /**
      * This method generates all the instructions in a code block by calling the corresponding methods.
+     * The kind of each instruction is found by pattern matching on its record.
      * @return the LLVM code corresponding to the code block
      */
-    private String code(ParseTree p){
+    private String code(List<Ast.Instruction> code){
         String result = new String();
-        for (ParseTree child : p.getChildren()) {
-            switch(child.getLabel().getType()){
-                case ASSIGN_:
-                    result += assign(child);
-                    break;
-                case IF_:
-                    result += if_(child);
-                    break;
-                case WHILE_:
-                    result += while_(child);
-                    break;
-                case PRINT_:
-                    result += print(child);
-                    break;
-                case READ_:
-                    result += read(child);
-                    break;
-                default:
-                    break;
+        for (Ast.Instruction child : code) {
+            if (child instanceof Ast.Assign assign) {
+                result += assign(assign);
+            } else if (child instanceof Ast.If if_) {
+                result += if_(if_);
+            } else if (child instanceof Ast.While while_) {
+                result += while_(while_);
+            } else if (child instanceof Ast.Print print) {
+                result += print(print);
+            } else if (child instanceof Ast.Read read) {
+                result += read(read);
             }
         }
         return result;
@@ -94,28 +109,28 @@ public class LLVMGenerator {
      * Call the operationHandler method to generate the LLVM code corresponding to the operation in the assignement.
      * @return the LLVM code corresponding to the assignement.
      */
-    private String assign(ParseTree p){
+    private String assign(Ast.Assign p){
         String result = new String();
-        result += ";ASSIGN ("+p.getChild(0).getLabel().getValue()+" := node("+p.getChild(1).getLabel().getValue()+"))\n";
+        result += ";ASSIGN ("+symbols.getName(p.id())+" := node("+label(p.value())+"))\n";
+        computed.clear();
         result += ";--------------------------------------------\n";
 
-        String varName = "%"+p.getChild(0).getLabel().getValue().toString();
+        String varName = "%"+symbols.getName(p.id());
         // create variable if not exist
-        if(!this.variablesName.contains(varName)){
-            this.variablesName.add(varName);
+        if(!this.allocated[p.id()]){
+            this.allocated[p.id()] = true;
             result += "\t"+varName+" = alloca i32\n";
         }
 
-        ParseTree rightSubT = p.getChild(1);
+        Ast.Expr rightSubT = p.value();
         String valueC = new String();
         
-        if(rightSubT.getLabel().getType().equals(LexicalUnit.NUMBER)){
-            valueC = rightSubT.getLabel().getValue().toString();
-        }else if(p.getChild(1).getLabel().getType().equals(LexicalUnit.VARNAME)){
+        if(rightSubT instanceof Ast.IntLit number){
+            valueC = Long.toString(number.value());
+        }else if(rightSubT instanceof Ast.Var var){
             
             valueC = generateNewVariableName();
-            String var = "%"+p.getChild(1).getLabel().getValue().toString();
-            result += "\t"+valueC+" = load i32, i32* "+var+"\n";
+            result += "\t"+valueC+" = load i32, i32* %"+symbols.getName(var.id())+"\n";
         }else{
             valueC = generateNewVariableName();
             result += "\t"+operationHandler(rightSubT, valueC);
@@ -126,38 +141,49 @@ public class LLVMGenerator {
         return result;
     }
 
+    /**
+     * This method returns the text by which a node is shown in the comments of
+     * the LLVM code: its operator, its name or its value.
+     * @param p the node of an expression
+     * @return the text of the node
+     */
+    private String label(Ast.Expr p){
+        if (p instanceof Ast.BinOp binOp) {
+            return String.valueOf(binOp.op());
+        } else if (p instanceof Ast.NaryOp naryOp) {
+            return String.valueOf(naryOp.op());
+        } else if (p instanceof Ast.Neg) {
+            return "-";
+        } else if (p instanceof Ast.Var var) {
+            return symbols.getName(var.id());
+        }
+        return Long.toString(((Ast.IntLit) p).value());
+    }
+
     /**
      * This method checks the type of the operation and calls the corresponding method.
-     * @param p the parse tree of the operation
+     * @param p the tree of the operation
      * @param target the target variable where the result of the operation will be stored.
      * @return the LLVM code corresponding to the operation.
      */
-    private String operationHandler(ParseTree p, String target){
+    private String operationHandler(Ast.Expr p, String target){
         String result = new String();
 
-        switch(p.getLabel().getType()){
-            case PLUS:
-                //PLUS
-                result += add(p,target);
-                break;
-            case MINUS:
-                //MINUS
-                if(p.getChildren().size() == 1){
-                    result += minusUnary(p,target);
-                } else if(p.getChildren().size() == 2){
-                    result += minus(p,target);
-                }
-                break;
-            case TIMES:
-                //TIMES
-                result += times(p,target);
-                break;
-            case DIVIDE:
-                //DIVIDE
-                result += divide(p,target);
-                break;
-            default:
-                break;
+        if (p instanceof Ast.Neg neg) {
+            result += minusUnary(neg, target);
+        } else if (p instanceof Ast.NaryOp naryOp) {
+            switch(naryOp.op()){
+                case '+':
+                    result += nary(naryOp, target, "ADDITION", "add");
+                    break;
+                case '*':
+                    result += nary(naryOp, target, "MULTIPLICATION", "mul");
+                    break;
+                default:
+                    break;
+            }
+        } else if (p instanceof Ast.BinOp binOp) {
+            result += binary(binOp, target);
         }
         return result;
     }
@@ -167,22 +193,27 @@ public class LLVMGenerator {
      * Call the operationHandler method to generate the LLVM code corresponding to the suboperation if
      * the suboperation is an operation.
      * Else it directly returns the value of the suboperation.
-     * @param p the parse tree of the suboperation
+     * @param p the tree of the suboperation
      * @return an array containing the LLVM code corresponding to the suboperation and the variable where the result of the suboperation is stored.
      */
-    private String[] subOperation(ParseTree p){
+    private String[] subOperation(Ast.Expr p){
         String resultText = new String();
         String operation = new String();
 
-        if(p.getLabel().getType().equals(LexicalUnit.NUMBER)){
-            operation = p.getLabel().getValue().toString();
-        }else if(p.getLabel().getType().equals(LexicalUnit.VARNAME)){
+        if(p instanceof Ast.IntLit number){
+            operation = Long.toString(number.value());
+        }else if(p instanceof Ast.Var var){
             operation = generateNewVariableName();
-            String varName = "%"+p.getLabel().getValue().toString();
-            resultText += "\t"+operation+" = load i32, i32* "+varName+"\n";
+            resultText += "\t"+operation+" = load i32, i32* %"+symbols.getName(var.id())+"\n";
+        }else if(computed.containsKey(p)){
+            // the same operation has already been computed in this instruction
+            operation = computed.get(p);
         }else{
             operation = generateNewVariableName();
             resultText += "\t"+operationHandler(p, operation);
+            if(exprs != null && exprs.getUses(p) > 1){
+                computed.put(p, operation);
+            }
         }
 
         String[] textAndOperation = {resultText, operation};
@@ -191,71 +222,108 @@ public class LLVMGenerator {
     }
 
     /**
-     * This method generates the LLVM code corresponding to an addition.
+     * This method generates the LLVM code corresponding to a substraction or a division.
      * Call the subOperation method to generate the LLVM code corresponding to the suboperations.
-     * @param p the parse tree of the addition
-     * @param target the target variable where the result of the addition will be stored.
-     * @return the LLVM code corresponding to the addition.
+     * The substractions and divisions nested in the left operand, like in a - b - c,
+     * are generated in the same call, from the innermost one, instead of recursively.
+     * @param p the tree of the operation
+     * @param target the target variable where the result of the operation will be stored.
+     * @return the LLVM code corresponding to the operation.
      */
-    private String add(ParseTree p, String target){
-        String result = new String();
-        result += ";ADDITION (" + target + " = " + p.getChild(0).getLabel().getValue().toString() + " + " + p.getChild(1).getLabel().getValue().toString() + ") \n";
-
-        String leftValueC = new String();
-        String rightValueC = new String();
+    private String binary(Ast.BinOp p, String target){
+        ArrayList<Ast.BinOp> operations = new ArrayList<>();
+        ArrayList<String> targets = new ArrayList<>();
+        // a StringBuilder, since a long chain gives a long text
+        StringBuilder result = new StringBuilder();
+        Ast.Expr left = p;
+        while (left instanceof Ast.BinOp binOp) {
+            if (!operations.isEmpty()) {
+                // the text of a nested operation is indented by the one using it
+                result.append("\t");
+            }
+            operations.add(binOp);
+            targets.add(operations.size() == 1 ? target : generateNewVariableName());
+            String name = binOp.op() == '-' ? "SUBSTRACTION" : "DIVISION";
+            result.append(";" + name + " (" + targets.get(targets.size() - 1) + " = " + label(binOp.left()) + " "
+                    + binOp.op() + " " + label(binOp.right()) + ") \n");
+            left = binOp.left();
+        }
 
-        String[] textAndOperationL = subOperation(p.getChild(0));
-        leftValueC = textAndOperationL[1];
-        result += textAndOperationL[0];
+        String[] textAndOperationL = subOperation(left);
+        String leftValueC = textAndOperationL[1];
+        result.append(textAndOperationL[0]);
 
-        String[] textAndOperationR = subOperation(p.getChild(1));
-        rightValueC = textAndOperationR[1];
-        result += textAndOperationR[0];
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            Ast.BinOp binOp = operations.get(i);
+            String[] textAndOperationR = subOperation(binOp.right());
+            String rightValueC = textAndOperationR[1];
+            result.append(textAndOperationR[0]);
 
-        result += "\t"+target+" = add i32 "+leftValueC+", "+rightValueC+"\n";
-        return result;
+            String instruction = binOp.op() == '-' ? "sub" : "sdiv";
+            result.append("\t"+targets.get(i)+" = "+instruction+" i32 "+leftValueC+", "+rightValueC+"\n");
+            leftValueC = targets.get(i);
+        }
+        return result.toString();
     }
 
     /**
-     * This method generates the LLVM code corresponding to a substraction.
-     * Call the subOperation method to generate the LLVM code corresponding to the suboperations.
-     * @param p the parse tree of the substraction
-     * @param target the target variable where the result of the substraction will be stored.
-     * @return the LLVM code corresponding to the substraction.
+     * This method generates the LLVM code corresponding to a run of additions or of multiplications.
+     * Call the subOperation method to generate the LLVM code corresponding to the operands.
+     * The operands are then combined by pairs, and the results by pairs again, so that the
+     * operations form a balanced tree whose depth is the logarithm of the number of operands,
+     * instead of a chain in which each operation waits for the previous one.
+     * @param p the tree of the operation
+     * @param target the target variable where the result of the operation will be stored.
+     * @param name the name of the operation in the comment.
+     * @param instruction the LLVM instruction computing the operation.
+     * @return the LLVM code corresponding to the operation.
      */
-    private String minus(ParseTree p, String target){
-        String result = new String();
-        result += ";SUBSTRACTION (" + target + " = " + p.getChild(0).getLabel().getValue().toString() + " - " + p.getChild(1).getLabel().getValue().toString() + ") \n";
-
-        String leftValueC = new String();
-        String rightValueC = new String();
-
-        String[] textAndOperationL = subOperation(p.getChild(0));
-        leftValueC = textAndOperationL[1];
-        result += textAndOperationL[0];
+    private String nary(Ast.NaryOp p, String target, String name, String instruction){
+        // a StringBuilder, since a long run gives a long text
+        StringBuilder result = new StringBuilder();
+        result.append(";" + name + " (" + target + " =");
+        for (int i = 0; i < p.operands().size(); i++) {
+            result.append(i == 0 ? " " : " " + p.op() + " ").append(label(p.operands().get(i)));
+        }
+        result.append(") \n");
 
-        String[] textAndOperationR = subOperation(p.getChild(1));
-        rightValueC = textAndOperationR[1];
-        result += textAndOperationR[0];
+        String[] values = new String[p.operands().size()];
+        for (int i = 0; i < values.length; i++) {
+            String[] textAndOperation = subOperation(p.operands().get(i));
+            values[i] = textAndOperation[1];
+            result.append(textAndOperation[0]);
+        }
 
-        result += "\t"+target+" = sub i32 "+leftValueC+", "+rightValueC+"\n";
-        return result;
+        int count = values.length;
+        while (count > 1) {
+            int half = 0;
+            for (int i = 0; i + 1 < count; i += 2) {
+                String sum = count == 2 ? target : generateNewVariableName();
+                result.append("\t"+sum+" = "+instruction+" i32 "+values[i]+", "+values[i + 1]+"\n");
+                values[half++] = sum;
+            }
+            if (count % 2 == 1) {
+                values[half++] = values[count - 1];
+            }
+            count = half;
+        }
+        return result.toString();
     }
 
     /**
      * This method generates the LLVM code corresponding to a unary minus.
      * Call the subOperation method to generate the LLVM code corresponding to the suboperation.
-     * @param p the parse tree of the unary minus
+     * @param p the tree of the unary minus
      * @param target the target variable where the result of the unary minus will be stored.
      * @return the LLVM code corresponding to the unary minus.
      */
-    private String minusUnary(ParseTree p, String target){
+    private String minusUnary(Ast.Neg p, String target){
         String result = new String();
-        result += ";UNARY SUBSTRACTION (" + target + " = -" + p.getChild(0).getLabel().getValue().toString() + ") \n";
+        result += ";UNARY SUBSTRACTION (" + target + " = -" + label(p.operand()) + ") \n";
 
         String valueC = new String();
 
-        String[] textAndOperationL = subOperation(p.getChild(0));
+        String[] textAndOperationL = subOperation(p.operand());
         valueC = textAndOperationL[1];
         result += textAndOperationL[0];
 
@@ -263,67 +331,15 @@ public class LLVMGenerator {
         return result;
     }
 
-    /**
-     * This method generates the LLVM code corresponding to a division.
-     * Call the subOperation method to generate the LLVM code corresponding to the suboperations.
-     * @param p the parse tree of the division
-     * @param target the target variable where the result of the division will be stored.
-     * @return the LLVM code corresponding to the division.
-     */
-    private String divide(ParseTree p, String target){
-        String result = new String();
-        result += ";DIVISION (" + target + " = " + p.getChild(0).getLabel().getValue().toString() + " / " + p.getChild(1).getLabel().getValue().toString() + ") \n";
-
-        String leftValueC = new String();
-        String rightValueC = new String();
-
-        String[] textAndOperationL = subOperation(p.getChild(0));
-        leftValueC = textAndOperationL[1];
-        result += textAndOperationL[0];
-
-        String[] textAndOperationR = subOperation(p.getChild(1));
-        rightValueC = textAndOperationR[1];
-        result += textAndOperationR[0];
-
-        result += "\t"+target+" = sdiv i32 "+leftValueC+", "+rightValueC+"\n";
-        return result;
-    }
-
-    /**
-     * This method generates the LLVM code corresponding to a multiplication.
-     * Call the subOperation method to generate the LLVM code corresponding to the suboperations.
-     * @param p the parse tree of the multiplication
-     * @param target the target variable where the result of the multiplication will be stored.
-     * @return the LLVM code corresponding to the multiplication.
-     */
-    private String times(ParseTree p, String target){
-        String result = new String();
-        result += ";MULTIPLICATION (" + target + " = " + p.getChild(0).getLabel().getValue().toString() + " * " + p.getChild(1).getLabel().getValue().toString() + ") \n";
-
-        String leftValueC = new String();
-        String rightValueC = new String();
-
-        String[] textAndOperationL = subOperation(p.getChild(0));
-        leftValueC = textAndOperationL[1];
-        result += textAndOperationL[0];
-
-        String[] textAndOperationR = subOperation(p.getChild(1));
-        rightValueC = textAndOperationR[1];
-        result += textAndOperationR[0];
-
-        result += "\t"+target+" = mul i32 "+leftValueC+", "+rightValueC+"\n";
-        return result;
-    }
-
     /**
      * This method generates the LLVM code corresponding to a if.
      * Call the cond method to generate the LLVM code corresponding to the condition.
      * Then setup the labels and the jumps.
      * And call the code method to generate the LLVM code corresponding to the code sections of the if
-     * @param p the parse tree of the if
+     * @param p the tree of the if
      * @return the LLVM code corresponding to the if.
      */
-    private String if_(ParseTree p){
+    private String if_(Ast.If p){
         String result = new String();
         result += ";IF \n";
         result += ";--------------------------------------------\n";
@@ -331,22 +347,22 @@ public class LLVMGenerator {
         result += "    "+"if"+ifCounter+":\n";
 
         String condResult = generateNewVariableName();
-        result += cond(p.getChild(0), condResult);
+        result += cond(p.cond(), condResult);
 
-        String jmp = (p.getChildren().size() == 3) ? "false" : "end";
+        String jmp = (p.otherwise() != null) ? "false" : "end";
 
         result += "\t"+"br i1 "+condResult+", label %if"+ifCounter+"true, label %if"+ifCounter+jmp+"\n";
 
         result += ";THEN \n";
 
         result += "    "+"if"+ifCounter+"true:\n\n";
-        result += code(p.getChild(1));
+        result += code(p.then());
         result += "\t"+"br label %if"+ifCounter+"end\n";
 
-        if(p.getChildren().size() == 3){
+        if(p.otherwise() != null){
             result += ";ELSE \n";
             result += "    "+"if"+ifCounter+"false:\n\n";
-            result += code(p.getChild(2));
+            result += code(p.otherwise());
             result += "\t"+"br label %if"+ifCounter+"end\n";
         }
 
@@ -360,30 +376,31 @@ public class LLVMGenerator {
     /**
      * This method generates the LLVM code corresponding to a condition.
      * Call the subOperation method to generate the LLVM code corresponding to the suboperations of the condition.
-     * @param p the parse tree of the condition
+     * @param p the tree of the condition
      * @param target the target variable where the result of the condition will be stored.
      * @return the LLVM code corresponding to the condition.
      */
-    private String cond(ParseTree p, String target){
+    private String cond(Ast.BinOp p, String target){
         String result = new String();
-        result += ";CONDITION (" + target + " = node(" + p.getChild(0).getLabel().getValue().toString() + ") " + p.getLabel().getValue().toString() + " node(" + p.getChild(1).getLabel().getValue().toString() + ")) \n";
+        result += ";CONDITION (" + target + " = node(" + label(p.left()) + ") " + p.op() + " node(" + label(p.right()) + ")) \n";
+        computed.clear();
 
         String leftValueC = new String();
         String rightValueC = new String();
 
-        String[] textAndOperationL = subOperation(p.getChild(0));
+        String[] textAndOperationL = subOperation(p.left());
         leftValueC = textAndOperationL[1];
         result += textAndOperationL[0];
 
-        String[] textAndOperationR = subOperation(p.getChild(1));
+        String[] textAndOperationR = subOperation(p.right());
         rightValueC = textAndOperationR[1];
         result += textAndOperationR[0];
 
-        if(p.getLabel().getType().equals(LexicalUnit.EQUAL)){
+        if(p.op() == '='){
             result += "\t"+target+" = icmp eq i32 "+leftValueC+", "+rightValueC+"\n";
-        }else if(p.getLabel().getType().equals(LexicalUnit.SMALLER)){
+        }else if(p.op() == '<'){
             result += "\t"+target+" = icmp slt i32 "+leftValueC+", "+rightValueC+"\n";
-        }else if(p.getLabel().getType().equals(LexicalUnit.GREATER)){
+        }else if(p.op() == '>'){
             result += "\t"+target+" = icmp sgt i32 "+leftValueC+", "+rightValueC+"\n";
         }
 
@@ -395,10 +412,10 @@ public class LLVMGenerator {
      * Call the cond method to generate the LLVM code corresponding to the condition.
      * Then setup the labels and the jumps.
      * And call the code method to generate the LLVM code corresponding to the code section of the while
-     * @param p the parse tree of the while
+     * @param p the tree of the while
      * @return the LLVM code corresponding to the while.
      */
-    private String while_(ParseTree p){
+    private String while_(Ast.While p){
         String result = new String();
         result += ";WHILE \n";
         result += ";--------------------------------------------\n";
@@ -406,14 +423,14 @@ public class LLVMGenerator {
         result += "    "+"while"+whileCounter+":\n";
 
         String condResult = generateNewVariableName();
-        result += cond(p.getChild(0), condResult);
+        result += cond(p.cond(), condResult);
 
         result += "\t"+"br i1 "+condResult+", label %while"+whileCounter+"true, label %while"+whileCounter+"end\n";
 
         result += ";THEN \n";
 
         result += "    "+"while"+whileCounter+"true:\n\n";
-        result += code(p.getChild(1));
+        result += code(p.body());
         result += "\t"+"br label %while"+whileCounter+"\n";
 
         result += ";END \n";
@@ -425,12 +442,12 @@ public class LLVMGenerator {
 
     /**
      * This method generates the LLVM code corresponding to the call of the print function.
-     * @param p the parse tree of the print function
+     * @param p the tree of the print function
      * @return the LLVM code corresponding to the print function.
      */
-    private String print(ParseTree p){
+    private String print(Ast.Print p){
         String result = new String();
-        String toPrint = "%"+p.getChild(0).getLabel().getValue().toString();
+        String toPrint = "%"+symbols.getName(p.id());
 
         result += ";PRINT (stdout = "+ toPrint+")\n";
         result += ";--------------------------------------------\n";
@@ -444,20 +461,20 @@ public class LLVMGenerator {
 
     /**
      * This method generates the LLVM code corresponding to the call of the read function.
-     * @param p the parse tree of the read function
+     * @param p the tree of the read function
      * @return the LLVM code corresponding to the read function.
      */
-    private String read(ParseTree p){
+    private String read(Ast.Read p){
         String result = new String();
-        String toStore = "%"+p.getChild(0).getLabel().getValue().toString();
+        String toStore = "%"+symbols.getName(p.id());
 
         result += ";READ ("+ toStore+" = stdin)\n";
         result += ";--------------------------------------------\n";
 
         String readed = generateNewVariableName();
 
-        if(!this.variablesName.contains(toStore)){
-            this.variablesName.add(toStore);
+        if(!this.allocated[p.id()]){
+            this.allocated[p.id()] = true;
             result += "\t"+ toStore +" = alloca i32\n";
         }
 
@@ -468,17 +485,17 @@ public class LLVMGenerator {
 
     /**
      * This method generate new variable name.
+     * The names of the variables of the program are skipped.
      * @return the new variable name.
      */
-    private String generateNewVariableName(){ //MAYBE MODIFY
-        String varName = "%v"+generateNewVariableNameCounter;
+    private String generateNewVariableName(){
+        String name = "v"+generateNewVariableNameCounter;
         generateNewVariableNameCounter ++;
-        while(variablesName.contains(varName)){
-            varName = "%v"+generateNewVariableNameCounter;
+        while(symbols.getId(name) != Symbol.NO_ID){
+            name = "v"+generateNewVariableNameCounter;
             generateNewVariableNameCounter ++;
         }
-        variablesName.add(varName);
-        return varName;
+        return "%"+name;
     }
 
     /**
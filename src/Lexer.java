@@ -2,14 +2,19 @@
 // Generated by JFlex 1.8.2 http://jflex.de/
 // source: src/LexicalAnalyzer.flex
 
+// This file has been patched by hand to follow the changes made to
+// src/LexicalAnalyzer.flex since it was generated, jflex being unavailable:
+// the user code and the actions (skipIgnored() among them), and the removal
+// of %line and %column with the line counting of the generated code. The DFA
+// tables have not changed. It must be regenerated from the .flex file with
+// jflex (make all) once it is available.
+
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.lang.Error;
 
 // See https://github.com/jflex-de/jflex/issues/222
 @SuppressWarnings("FallThrough")
-class Lexer {
+class Lexer implements TokenSource {
 
   /** This character denotes the end of file. */
   public static final int YYEOF = -1;
@@ -304,12 +309,6 @@ class Lexer {
    */
   private int zzFinalHighSurrogate = 0;
 
-  /** Number of newlines encountered up to the start of the matched text. */
-  private int yyline;
-
-  /** Number of characters from the last newline up to the start of the matched text. */
-  private int yycolumn;
-
   /** Number of characters up to the start of the matched text. */
   @SuppressWarnings("unused")
   private long yychar;
@@ -323,15 +322,76 @@ class Lexer {
 
   /* user code: */
     private int stackStateComment = 0;
-	private ArrayList<Symbol> variables = new ArrayList<>();
-    public ArrayList<Symbol> tokens = new ArrayList<>();
+    private boolean lastChunk = true;
+	private IdentifierTable identifiers = new IdentifierTable();
+    private LineIndex lines = LineIndex.UNKNOWN;
+
+    public IdentifierTable getIdentifiers(){
+        return identifiers;
+    }
+
+    public LineIndex getLineIndex(){
+        return lines;
+    }
+
+    public void setLineIndex(LineIndex lines){
+        this.lines = lines;
+    }
 
     public ArrayList<Symbol> getVariables(){
-        return variables;
+        return identifiers.getSortedVariables();
+    }
+
+    public long getOffset(){
+        return yychar;
+    }
+
+    /**
+     * This method makes the lexer start in the middle of a source, in order to
+     * lex it by chunks. The chunk must start at the beginning of a line.
+     *
+     * @param offset    the offset of the first character of the chunk in the source.
+     * @param inComment true if the chunk starts inside a long comment.
+     * @param lastChunk false if the source continues after the chunk, in which
+     *                  case a long comment may still be open at its end.
+     */
+    public void startChunk(long offset, boolean inComment, boolean lastChunk){
+        yychar = offset;
+        this.lastChunk = lastChunk;
+        if(inComment){
+            stackStateComment = 1;
+            yybegin(COMMENT);
+        }
     }
 
-    public ArrayList<Symbol> getTokens(){
-        return tokens;
+    /**
+     * This method extends the current match over the characters which follow it
+     * in the buffer and would only be skipped one match at a time: the blanks and
+     * the line terminators outside of the comments, and everything but '%' and
+     * the echoed line terminators inside a long comment.
+     */
+    private void skipIgnored(){
+        char[] buffer = zzBuffer;
+        int end = zzEndRead;
+        int pos = zzMarkedPos;
+        if(zzLexicalState == COMMENT){
+            while(pos < end){
+                char c = buffer[pos];
+                if(c == '%' || c == 0x0B || c == 0x0C || c == 0x85 || c == 0x2028 || c == 0x2029){
+                    break;
+                }
+                pos++;
+            }
+        } else {
+            while(pos < end){
+                char c = buffer[pos];
+                if(c != ' ' && c != '\n' && c != '\r'){
+                    break;
+                }
+                pos++;
+            }
+        }
+        zzMarkedPos = pos;
     }
 
 
@@ -466,8 +526,6 @@ class Lexer {
       zzStartRead = 0;
       zzEndRead = 0;
       zzFinalHighSurrogate = 0;
-      yyline = 0;
-      yycolumn = 0;
       yychar = 0L;
   }
 
@@ -586,27 +644,9 @@ class Lexer {
     if (!zzEOFDone) {
       zzEOFDone = true;
     
-    for(int i = 0; i<10000; i++){
-
-    }
-    if(stackStateComment != 0){
+    if(stackStateComment != 0 && lastChunk){
         throw new Error("The long comment has not been closed!");
     }
-
-	//System.out.println("\nVariables");
-
-	Collections.sort(variables, new Comparator<Symbol>() {
-        @Override
-        public int compare(Symbol s1, Symbol s2) {
-            return s1.getValue().toString().compareTo(s2.getValue().toString());
-        }
-    });
-
-	for(Symbol s : variables){
-		//System.out.println(s.getValue()+" "+s.getLine());
-	}
-
-    this.tokens.add(new Symbol(LexicalUnit.EOS, yyline, yycolumn, "EOS"));
     }
   }
 
@@ -637,63 +677,8 @@ class Lexer {
     while (true) {
       zzMarkedPosL = zzMarkedPos;
 
-      boolean zzR = false;
-      int zzCh;
-      int zzCharCount;
-      for (zzCurrentPosL = zzStartRead  ;
-           zzCurrentPosL < zzMarkedPosL ;
-           zzCurrentPosL += zzCharCount ) {
-        zzCh = Character.codePointAt(zzBufferL, zzCurrentPosL, zzMarkedPosL);
-        zzCharCount = Character.charCount(zzCh);
-        switch (zzCh) {
-        case '\u000B':  // fall through
-        case '\u000C':  // fall through
-        case '\u0085':  // fall through
-        case '\u2028':  // fall through
-        case '\u2029':
-          yyline++;
-          yycolumn = 0;
-          zzR = false;
-          break;
-        case '\r':
-          yyline++;
-          yycolumn = 0;
-          zzR = true;
-          break;
-        case '\n':
-          if (zzR)
-            zzR = false;
-          else {
-            yyline++;
-            yycolumn = 0;
-          }
-          break;
-        default:
-          zzR = false;
-          yycolumn += zzCharCount;
-        }
-      }
+      yychar+= zzMarkedPosL-zzStartRead;
 
-      if (zzR) {
-        // peek one character ahead if it is
-        // (if we have counted one line too much)
-        boolean zzPeek;
-        if (zzMarkedPosL < zzEndReadL)
-          zzPeek = zzBufferL[zzMarkedPosL] == '\n';
-        else if (zzAtEOF)
-          zzPeek = false;
-        else {
-          boolean eof = zzRefill();
-          zzEndReadL = zzEndRead;
-          zzMarkedPosL = zzMarkedPos;
-          zzBufferL = zzBuffer;
-          if (eof)
-            zzPeek = false;
-          else
-            zzPeek = zzBufferL[zzMarkedPosL] == '\n';
-        }
-        if (zzPeek) yyline--;
-      }
       zzAction = -1;
 
       zzCurrentPosL = zzCurrentPos = zzStartRead = zzMarkedPosL;
@@ -757,18 +742,18 @@ class Lexer {
       if (zzInput == YYEOF && zzStartRead == zzCurrentPos) {
         zzAtEOF = true;
             zzDoEOF();
-          { 	return new Symbol(LexicalUnit.EOS, yyline, yycolumn);
+          { 	return new Symbol(LexicalUnit.EOS, yychar, "EOS");
  }
       }
       else {
         switch (zzAction < 0 ? zzAction : ZZ_ACTION[zzAction]) {
           case 1:
-            { throw new Error("An unexpected symbol has been encountered : '"+yytext()+"'. At line "+yyline+" and column "+yycolumn+".");
+            { throw new Error("An unexpected symbol has been encountered : '"+yytext()+"'. At line "+lines.getLine(yychar)+" and column "+lines.getColumn(yychar)+".");
             }
             // fall through
           case 30: break;
           case 2:
-            { 
+            { skipIgnored();
             }
             // fall through
           case 31: break;
@@ -778,66 +763,63 @@ class Lexer {
             // fall through
           case 32: break;
           case 4:
-            { this.tokens.add(new Symbol(LexicalUnit.LPAREN, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.LPAREN, yychar, yytext());
             }
             // fall through
           case 33: break;
           case 5:
-            { this.tokens.add(new Symbol(LexicalUnit.RPAREN, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.RPAREN, yychar, yytext());
             }
             // fall through
           case 34: break;
           case 6:
-            { this.tokens.add(new Symbol(LexicalUnit.TIMES, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.TIMES, yychar, yytext());
             }
             // fall through
           case 35: break;
           case 7:
-            { this.tokens.add(new Symbol(LexicalUnit.PLUS, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.PLUS, yychar, yytext());
             }
             // fall through
           case 36: break;
           case 8:
-            { this.tokens.add(new Symbol(LexicalUnit.COMMA, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.COMMA, yychar, yytext());
             }
             // fall through
           case 37: break;
           case 9:
-            { this.tokens.add(new Symbol(LexicalUnit.MINUS, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.MINUS, yychar, yytext());
             }
             // fall through
           case 38: break;
           case 10:
-            { this.tokens.add(new Symbol(LexicalUnit.DIVIDE, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.DIVIDE, yychar, yytext());
             }
             // fall through
           case 39: break;
           case 11:
-            { this.tokens.add(new Symbol(LexicalUnit.NUMBER, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.NUMBER, yychar, yytext());
             }
             // fall through
           case 40: break;
           case 12:
-            { this.tokens.add(new Symbol(LexicalUnit.SMALLER, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.SMALLER, yychar, yytext());
             }
             // fall through
           case 41: break;
           case 13:
-            { this.tokens.add(new Symbol(LexicalUnit.EQUAL, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.EQUAL, yychar, yytext());
             }
             // fall through
           case 42: break;
           case 14:
-            { this.tokens.add(new Symbol(LexicalUnit.GREATER, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.GREATER, yychar, yytext());
             }
             // fall through
           case 43: break;
           case 15:
-            { Symbol var = new Symbol(LexicalUnit.VARNAME, yyline, yycolumn, yytext());
-    							if(!variables.stream().anyMatch(s -> s.getValue().toString().equals(var.getValue().toString()))){
-    								variables.add(var);
-    							}
-                                this.tokens.add(var);
+            { int id = identifiers.intern(yytext(), yychar);
+                                return new Symbol(LexicalUnit.VARNAME, yychar, identifiers.getName(id), id);
             }
             // fall through
           case 44: break;
@@ -848,27 +830,27 @@ class Lexer {
             // fall through
           case 45: break;
           case 17:
-            { yytext();
+            { 
             }
             // fall through
           case 46: break;
           case 18:
-            { this.tokens.add(new Symbol(LexicalUnit.ASSIGN, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.ASSIGN, yychar, yytext());
             }
             // fall through
           case 47: break;
           case 19:
-            { this.tokens.add(new Symbol(LexicalUnit.PROGNAME, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.PROGNAME, yychar, yytext());
             }
             // fall through
           case 48: break;
           case 20:
-            { this.tokens.add(new Symbol(LexicalUnit.DO, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.DO, yychar, yytext());
             }
             // fall through
           case 49: break;
           case 21:
-            { this.tokens.add(new Symbol(LexicalUnit.IF, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.IF, yychar, yytext());
             }
             // fall through
           case 50: break;
@@ -879,37 +861,37 @@ class Lexer {
             // fall through
           case 51: break;
           case 23:
-            { this.tokens.add(new Symbol(LexicalUnit.END, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.END, yychar, yytext());
             }
             // fall through
           case 52: break;
           case 24:
-            { this.tokens.add(new Symbol(LexicalUnit.ELSE, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.ELSE, yychar, yytext());
             }
             // fall through
           case 53: break;
           case 25:
-            { this.tokens.add(new Symbol(LexicalUnit.READ, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.READ, yychar, yytext());
             }
             // fall through
           case 54: break;
           case 26:
-            { this.tokens.add(new Symbol(LexicalUnit.THEN, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.THEN, yychar, yytext());
             }
             // fall through
           case 55: break;
           case 27:
-            { this.tokens.add(new Symbol(LexicalUnit.BEGIN, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.BEGIN, yychar, yytext());
             }
             // fall through
           case 56: break;
           case 28:
-            { this.tokens.add(new Symbol(LexicalUnit.PRINT, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.PRINT, yychar, yytext());
             }
             // fall through
           case 57: break;
           case 29:
-            { this.tokens.add(new Symbol(LexicalUnit.WHILE, yyline, yycolumn, yytext()));
+            { return new Symbol(LexicalUnit.WHILE, yychar, yytext());
             }
             // fall through
           case 58: break;
@@ -0,0 +1,282 @@
+import java.io.FileReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class converts the offsets carried by the tokens into lines and columns.
+ * The offsets at which the lines start are only computed the first time a
+ * position is asked for, so that the scanners do not have to follow the lines:
+ * from the text of the source when it is known, or by reading the source file
+ * again. A source which cannot be read again, like a pipe, is read through the
+ * reader given by getReader(), which keeps a copy of the characters read by the
+ * scanner, block by block. A position is then found by a binary search.
+ * The lines are counted as the lexer does: "\r\n", '\r', '\n', and the
+ * vertical tab, form feed, next line, line separator and paragraph separator
+ * characters end a line. The columns count the characters from the start of
+ * the line.
+ */
+public class LineIndex {
+    /**
+     * The index of a source which is not known, giving undefined positions.
+     */
+    public static final LineIndex UNKNOWN = new LineIndex(null, null, null);
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private CharSequence text;
+    private String fileName;
+    private SpoolingReader spool;
+    private long[] lineStarts;
+    private int lineCount;
+    // The number of characters indexed so far, and whether the last one is '\r'
+    private long length;
+    private boolean afterCR;
+
+    private LineIndex(CharSequence text, String fileName, Reader reader) {
+        this.text = text;
+        this.fileName = fileName;
+        this.spool = reader != null ? new SpoolingReader(reader) : null;
+        this.lineStarts = null;
+        this.lineCount = 0;
+        this.length = 0;
+        this.afterCR = false;
+    }
+
+    /**
+     * @param text the text of the source.
+     * @return the index of the lines of the text.
+     */
+    public static LineIndex of(CharSequence text) {
+        return new LineIndex(text, null, null);
+    }
+
+    /**
+     * @param fileName the name of the source file, which is read again in UTF-8
+     *                 (and decompressed if it ends with ".gz") when a position
+     *                 is asked for. It must be a regular file.
+     * @return the index of the lines of the file.
+     */
+    public static LineIndex ofFile(String fileName) {
+        return new LineIndex(null, fileName, null);
+    }
+
+    /**
+     * @param reader a reader on a source which cannot be read again, which is
+     *               then only read through getReader().
+     * @return the index of the lines of the characters read so far.
+     */
+    public static LineIndex spool(Reader reader) {
+        return new LineIndex(null, null, reader);
+    }
+
+    /**
+     * @return for an index made by spool(), the reader to give to the scanner,
+     *         which keeps the characters it reads for the index.
+     */
+    public Reader getReader() {
+        return spool;
+    }
+
+    /**
+     * @param offset the offset of a character in the source.
+     * @return the line of the character, starting from 0.
+     */
+    public int getLine(long offset) {
+        if (offset < 0 || this == UNKNOWN) {
+            return Symbol.UNDEFINED_POSITION;
+        }
+        return find(offset);
+    }
+
+    /**
+     * @param offset the offset of a character in the source.
+     * @return the column of the character, starting from 0.
+     */
+    public int getColumn(long offset) {
+        if (offset < 0 || this == UNKNOWN) {
+            return Symbol.UNDEFINED_POSITION;
+        }
+        return (int) (offset - lineStarts[find(offset)]);
+    }
+
+    /**
+     * @return the number of the last line whose start is not after the offset.
+     */
+    private int find(long offset) {
+        build(offset);
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * This method computes the offsets at which the lines start. A spooled
+     * source is indexed up to the characters read so far, and again later if a
+     * position after them is asked for. It is synchronized because the chunks of
+     * a ParallelLexer share one index.
+     */
+    private synchronized void build(long offset) {
+        if (lineStarts == null) {
+            lineStarts = new long[1024];
+            lineCount = 1;
+        } else if (spool == null || offset < length) {
+            return;
+        }
+        if (spool != null) {
+            spool.addTo(this);
+            return;
+        }
+        char[] chars = new char[8192];
+        try (Reader reader = text != null ? null : open(fileName)) {
+            int n;
+            while ((n = text != null ? read(chars, length) : reader.read(chars, 0, chars.length)) > 0) {
+                add(chars, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This method adds the lines started by the characters following the ones
+     * already added.
+     */
+    private void add(char[] chars, int offset, int count) {
+        long[] starts = lineStarts;
+        int lines = lineCount;
+        boolean cr = afterCR;
+        for (int i = offset; i < offset + count; i++) {
+            char c = chars[i];
+            // '\n', vertical tab, form feed and '\r' follow each other
+            boolean newLine = c <= '\r' ? c >= '\n' : c == 0x85 || c == 0x2028 || c == 0x2029;
+            if (newLine) {
+                if (c == '\n' && cr) {
+                    // "\r\n" ends a single line
+                    lines--;
+                }
+                if (lines == starts.length) {
+                    starts = Arrays.copyOf(starts, lines * 2);
+                }
+                starts[lines++] = length + (i - offset) + 1;
+            }
+            cr = c == '\r';
+        }
+        length += count;
+        afterCR = cr;
+        lineStarts = starts;
+        lineCount = lines;
+    }
+
+    /**
+     * @return a reader on the text of the file, decompressed if needed.
+     */
+    private static Reader open(String fileName) throws IOException {
+        if (CompressedSource.isCompressed(fileName)) {
+            return CompressedSource.open(fileName);
+        }
+        return new FileReader(fileName, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method copies the characters of the text following the given offset.
+     *
+     * @return the number of characters copied.
+     */
+    private int read(char[] chars, long offset) {
+        int start = (int) offset;
+        int n = Math.min(chars.length, text.length() - start);
+        for (int i = 0; i < n; i++) {
+            chars[i] = text.charAt(start + i);
+        }
+        return n;
+    }
+
+    /**
+     * This class passes on the characters of the source to the scanner, and
+     * copies them into blocks of BLOCK_SIZE characters, so that the source does
+     * not have to be read again to find the lines.
+     */
+    private static class SpoolingReader extends FilterReader {
+        private char[][] blocks = new char[16][];
+        private long size = 0;
+
+        SpoolingReader(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                block()[(int) (size++ % BLOCK_SIZE)] = (char) c;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            for (int copied = 0; copied < n;) {
+                int start = (int) (size % BLOCK_SIZE);
+                int count = Math.min(n - copied, BLOCK_SIZE - start);
+                System.arraycopy(cbuf, off + copied, block(), start, count);
+                size += count;
+                copied += count;
+            }
+            return n;
+        }
+
+        /**
+         * @return the block in which the next character is kept.
+         */
+        private char[] block() {
+            int index = (int) (size / BLOCK_SIZE);
+            if (index == blocks.length) {
+                blocks = Arrays.copyOf(blocks, index * 2);
+            }
+            if (blocks[index] == null) {
+                blocks[index] = new char[BLOCK_SIZE];
+            }
+            return blocks[index];
+        }
+
+        /**
+         * This method adds to the index the characters read since it was last
+         * built.
+         */
+        void addTo(LineIndex index) {
+            while (index.length < size) {
+                int start = (int) (index.length % BLOCK_SIZE);
+                int count = (int) Math.min(size - index.length, BLOCK_SIZE - start);
+                index.add(blocks[(int) (index.length / BLOCK_SIZE)], start, count);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("The characters of the source cannot be skipped");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException {
+            throw new IOException("The source cannot be marked");
+        }
+    }
+}
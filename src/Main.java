@@ -1,46 +1,155 @@
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class contains the main method.
  * This checks if there is one argument and read the file before passing it to
  * the lexer.
- * After the lexer, it calls the parser to ensure that the input data respect
- * the syntax specified by a grammar.
+ * The parser pulls the tokens from the lexer one at a time to ensure that the
+ * input data respect the syntax specified by a grammar.
  * This also calls the tree simplifier to simplify the parse tree created by the parser.
+ * Without -wt, the parse tree is not needed and the parser directly builds the
+ * simplified one. With -wt, the parser only records the left-most derivation,
+ * from which the parse tree is built for the latex file, then simplified in
+ * place.
  * The last step is to generate the corresponding LLVM code, which is printed to the standard output.
- * If specified in the second argument, it creates a latex file containing the
- * parse tree and the simplified one with the name specified in the third argument.
+ * The options follow the name of the source file:
+ * -wt file   creates a latex file containing the parse tree and the simplified
+ *            one with the given name.
+ * -buffered  lexes the whole file into a compact TokenBuffer before parsing,
+ *            so that lexical errors are reported before syntax errors.
+ * -scanner s selects the scanner: "jflex" (default) for the Lexer generated by
+ *            JFlex, or "ascii" for the hand-written AsciiScanner.
+ * -parallel  lexes the whole file like -buffered, but with several threads
+ *            working on chunks of the file, then parses the top-level
+ *            instructions with several threads too. It always uses the JFlex
+ *            Lexer, so it cannot be used with another scanner or with -lex.
+ * -lex       only prints the tokens with their position, followed by the
+ *            variables, to compare the scanners with each other.
+ * -derivation file
+ *            writes the left-most derivation (the numbers of the applied rules)
+ *            to the given file while parsing.
+ * A source file whose name ends with ".gz" is decompressed while it is read.
  */
 public class Main {
+    private static final long MAPPING_THRESHOLD = 1 << 20;
+
     public static void main(String[] args) {
         try {
             if (args.length == 0) {
                 throw new IllegalArgumentException("At least one argument needed!");
             }
 
-            Reader fileInputStream = new FileReader(args[0]);
+            String texFile = null;
+            String derivationFile = null;
+            boolean buffered = false;
+            boolean lexOnly = false;
+            boolean parallel = false;
+            String scanner = "jflex";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("-wt") && i + 1 < args.length) {
+                    texFile = args[++i];
+                } else if (args[i].equals("-buffered")) {
+                    buffered = true;
+                } else if (args[i].equals("-scanner") && i + 1 < args.length) {
+                    scanner = args[++i];
+                } else if (args[i].equals("-lex")) {
+                    lexOnly = true;
+                } else if (args[i].equals("-parallel")) {
+                    parallel = true;
+                } else if (args[i].equals("-derivation") && i + 1 < args.length) {
+                    derivationFile = args[++i];
+                }
+            }
+            if (parallel && !scanner.equals("jflex")) {
+                throw new IllegalArgumentException("-parallel only works with the jflex scanner");
+            }
+            if (parallel && lexOnly) {
+                throw new IllegalArgumentException("-parallel cannot be used with -lex");
+            }
 
-            Lexer lexer = new Lexer(fileInputStream);
-            lexer.yylex();
+            TokenStream tokens;
+            if (parallel) {
+                tokens = new TokenStream(ParallelLexer.lex(SourceText.map(args[0])));
+            } else {
+                LineIndex lines;
+                Reader fileInputStream;
+                if (new File(args[0]).isFile()) {
+                    // the lines are found by reading the file again, if a position is asked for
+                    lines = LineIndex.ofFile(args[0]);
+                    fileInputStream = openSource(args[0]);
+                } else {
+                    // a pipe cannot be read again: the scanner reads it through the index
+                    lines = LineIndex.spool(openSource(args[0]));
+                    fileInputStream = lines.getReader();
+                }
 
-            Parser parser = new Parser(lexer.getTokens());
-            parser.parse();
+                TokenSource lexer;
+                if (scanner.equals("ascii")) {
+                    lexer = new AsciiScanner(fileInputStream);
+                } else if (scanner.equals("jflex")) {
+                    lexer = new Lexer(fileInputStream);
+                } else {
+                    throw new IllegalArgumentException("Unknown scanner: " + scanner);
+                }
+                lexer.setLineIndex(lines);
 
-            TreeSimplifier treeSimplifier = new TreeSimplifier(parser.getParseTree());
-            treeSimplifier.simplify();
+                if (lexOnly) {
+                    printTokens(lexer);
+                    return;
+                }
 
-            if (args.length > 2 && args[1].equals("-wt")) {
-                ParseTree pt = parser.getParseTree();
-                TexHandler.createTreeTex(args[2], pt.toLaTeX());
+                if (buffered) {
+                    tokens = new TokenStream(TokenBuffer.lex(lexer, SourceText.map(args[0])));
+                } else {
+                    tokens = new TokenStream(lexer);
+                }
             }
 
-            if (args.length > 2 && args[1].equals("-wt")) {
-                ParseTree npt = treeSimplifier.getNewTree();
-                TexHandler.createTreeTex("simple_"+args[2], npt.toLaTeX());
+            Parser parser = new Parser(tokens);
+            if (parallel) {
+                parser.setPool(ForkJoinPool.commonPool());
+            }
+            Ast.Program program;
+            ExprTable exprs = new ExprTable();
+            // the file of the derivation is closed even if the parsing fails
+            try (Writer derivation = derivationFile == null ? null
+                    : new BufferedWriter(new FileWriter(derivationFile, StandardCharsets.UTF_8))) {
+                if (derivation != null) {
+                    parser.setDerivationOutput(derivation);
+                }
+                if (texFile != null) {
+                    parser.parse();
+
+                    ParseTree pt = parser.getParseTree();
+                    TexHandler.createTreeTex(texFile, pt.toLaTeX());
+
+                    // the parse tree is not needed anymore, so it is simplified in place
+                    TreeSimplifier treeSimplifier = new TreeSimplifier(pt, true);
+                    pt = null;
+                    treeSimplifier.simplify();
+                    ParseTree simplifiedTree = treeSimplifier.getNewTree();
+
+                    TexHandler.createTreeTex("simple_"+texFile, simplifiedTree.toLaTeX());
+
+                    FlatTree flatTree = FlatTree.of(simplifiedTree);
+                    program = Ast.fromTree(flatTree, flatTree.size() - 1, parser.getSymbolTable(), exprs);
+                } else {
+                    // the parse tree is only needed for the latex file
+                    parser.parseSimplified();
+                    program = Ast.fromTree(parser.getSimplifiedTree(), parser.getSimplifiedRoot(),
+                            parser.getSymbolTable(), exprs);
+                }
             }
 
-            LLVMGenerator llvmGenerator = new LLVMGenerator(treeSimplifier.getNewTree());
+            LLVMGenerator llvmGenerator = new LLVMGenerator(program, parser.getSymbolTable(), exprs);
             llvmGenerator.generateCorrespondingLLVM();
             String llvmCode = llvmGenerator.getResult();
 
@@ -54,4 +163,50 @@ public class Main {
             e.printStackTrace();
         }
     }
+
+    /**
+     * This method prints every token with its line and column, then the variables
+     * with the position of their first occurrence.
+     *
+     * @param lexer the scanner reading the source.
+     * @throws IOException if the scanner cannot read its input.
+     */
+    private static void printTokens(TokenSource lexer) throws IOException {
+        LineIndex lines = lexer.getLineIndex();
+        Symbol token = lexer.yylex();
+        while (token.getType() != LexicalUnit.EOS) {
+            System.out.println(token.toString() + "\tline: " + (lines.getLine(token.getOffset()) + 1) + "\tcolumn: "
+                    + lines.getColumn(token.getOffset()));
+            token = lexer.yylex();
+        }
+        System.out.println("Variables");
+        for (Symbol variable : lexer.getIdentifiers().getSortedVariables()) {
+            System.out.println(variable.getValue() + "\t" + (lines.getLine(variable.getOffset()) + 1));
+        }
+    }
+
+    /**
+     * This method opens the source file for the lexer. Large regular files are
+     * memory mapped. Small ones are read through a FileReader in UTF-8, like the
+     * mapped ones, because loading the classes needed by the mapping takes longer
+     * than reading a small file. Other files (pipes, devices) are read through a
+     * FileReader. Compressed files are decompressed on the fly.
+     *
+     * @param fileName the name of the source file.
+     * @return a reader on the content of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    private static Reader openSource(String fileName) throws IOException {
+        if (CompressedSource.isCompressed(fileName)) {
+            return CompressedSource.open(fileName);
+        }
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            return new FileReader(fileName);
+        }
+        if (file.length() >= MAPPING_THRESHOLD) {
+            return new MappedFileReader(fileName);
+        }
+        return new FileReader(file, StandardCharsets.UTF_8);
+    }
 }
\ No newline at end of file
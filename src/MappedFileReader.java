@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads a source file through a memory mapping of the file.
+ * The mapped bytes are copied in bulk into a small heap chunk which is decoded
+ * as UTF-8 straight into the buffer of the lexer. On array-backed buffers the
+ * JDK decoder converts runs of ASCII bytes with a vectorized loop, so pure
+ * ASCII sources never go through the per-character decoding path.
+ * Files bigger than 2 GB are mapped window by window.
+ */
+public class MappedFileReader extends Reader {
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private FileChannel channel;
+    private long fileSize;
+    private long windowStart;
+    private MappedByteBuffer window;
+    private ByteBuffer chunk; // bytes copied from the window, not decoded yet
+    private CharsetDecoder decoder;
+    private int pending; // second half of a surrogate pair, or -1
+    private boolean atEOF;
+
+    /**
+     * Constructor of the class. It maps the beginning of the file.
+     *
+     * @param fileName the name of the file to read.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public MappedFileReader(String fileName) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        this.chunk.limit(0);
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.pending = -1;
+        this.atEOF = false;
+        map(0);
+    }
+
+    /**
+     * This method maps the window of the file starting at the given offset.
+     *
+     * @param start the offset of the window in the file.
+     * @throws IOException if the file cannot be mapped.
+     */
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+    }
+
+    /**
+     * This method moves the next mapped bytes into the chunk, after the bytes
+     * which have not been decoded yet.
+     *
+     * @return true if all the bytes of the file have been moved into the chunk.
+     * @throws IOException if the file cannot be mapped.
+     */
+    private boolean fillChunk() throws IOException {
+        if (!window.hasRemaining() && windowStart + window.limit() < fileSize) {
+            map(windowStart + window.limit());
+        }
+        chunk.compact();
+        int n = Math.min(chunk.remaining(), window.remaining());
+        window.get(chunk.array(), chunk.position(), n);
+        chunk.position(chunk.position() + n);
+        chunk.flip();
+        return !window.hasRemaining() && windowStart + window.limit() == fileSize;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (atEOF) {
+            return -1;
+        }
+        if (pending >= 0) {
+            cbuf[off] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (true) {
+            boolean last = fillChunk();
+            CoderResult result = decoder.decode(chunk, out, last);
+            if (last && result.isUnderflow()) {
+                decoder.flush(out);
+                atEOF = true;
+            }
+            if (out.position() > off) {
+                return out.position() - off;
+            }
+            if (result.isOverflow()) {
+                // only one char was requested but the next character is a surrogate pair
+                CharBuffer pair = CharBuffer.allocate(2);
+                decoder.decode(chunk, pair, last);
+                cbuf[off] = pair.get(0);
+                pending = pair.get(1);
+                return 1;
+            }
+            if (atEOF) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class lexes a source with several threads of a ForkJoinPool.
+ * The source is cut into chunks at line boundaries, which no token can cross.
+ * A first parallel pass computes the state in which every chunk ends (inside a
+ * long comment or not) for both states in which it may start. Chaining these
+ * results gives the starting state of every chunk, which are then lexed
+ * concurrently, each by its own Lexer. The tokens and the variables of the
+ * chunks are finally joined in order, which gives the same result as a single
+ * Lexer reading the whole source. All the chunks share the LineIndex of the
+ * source, since their tokens carry offsets in the whole source.
+ */
+public class ParallelLexer {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * This method lexes the source on the common pool, with chunks of at least
+     * one megabyte.
+     *
+     * @param source the text to lex.
+     * @return the buffer holding all the tokens.
+     * @throws IOException if a chunk cannot be read.
+     */
+    public static TokenBuffer lex(CharSequence source) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkCount = Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, source.length() / MIN_CHUNK_SIZE);
+        return lex(source, pool, chunkCount);
+    }
+
+    /**
+     * This method lexes the source in the given number of chunks. The lexical
+     * errors are the ones the sequential Lexer would have thrown: the first
+     * error of the source is thrown, even if a later chunk fails first.
+     *
+     * @param source     the text to lex.
+     * @param pool       the pool running the chunks.
+     * @param chunkCount the number of chunks wanted. There may be fewer chunks
+     *                   if the source has too few lines.
+     * @return the buffer holding all the tokens.
+     * @throws IOException if a chunk cannot be read.
+     */
+    public static TokenBuffer lex(CharSequence source, ForkJoinPool pool, int chunkCount) throws IOException {
+        LineIndex lines = LineIndex.of(source);
+        int[] bounds = split(source, Math.max(chunkCount, 1));
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(source, lines, bounds[i], bounds[i + 1], i == chunks.length - 1);
+        }
+
+        run(pool, chunks);
+        boolean inComment = false;
+        for (Chunk chunk : chunks) {
+            if (chunk.echoes) {
+                // The characters matched by no rule are echoed by the lexer, in order.
+                Lexer lexer = new Lexer(new StringReader(source.toString()));
+                lexer.setLineIndex(lines);
+                return TokenBuffer.lex(lexer, source);
+            }
+            chunk.inComment = inComment;
+            inComment = chunk.endsInComment[inComment ? 1 : 0];
+        }
+
+        run(pool, chunks);
+        IdentifierTable identifiers = new IdentifierTable();
+        TokenBuffer buffer = new TokenBuffer(source, identifiers, lines);
+        for (Chunk chunk : chunks) {
+            if (chunk.error != null) {
+                throw chunk.error;
+            }
+            if (chunk.ioError != null) {
+                throw chunk.ioError;
+            }
+            IdentifierTable chunkIdentifiers = chunk.identifiers;
+            for (int id = 0; id < chunkIdentifiers.size(); id++) {
+                identifiers.intern(chunkIdentifiers.getName(id), chunkIdentifiers.getOffset(id));
+            }
+            int count = chunk.last ? chunk.tokens.size() : chunk.tokens.size() - 1;
+            buffer.append(chunk.tokens, count);
+        }
+        buffer.trimToSize();
+        return buffer;
+    }
+
+    /**
+     * This method cuts the source into chunks of about the same size, each one
+     * ending just after a '\n'.
+     *
+     * @return the offsets of the bounds of the chunks, from 0 to the length of the source.
+     */
+    private static int[] split(CharSequence source, int chunkCount) {
+        int length = source.length();
+        int[] bounds = new int[chunkCount + 1];
+        int n = 1;
+        for (int k = 1; k < chunkCount; k++) {
+            int i = Math.max((int) ((long) length * k / chunkCount), bounds[n - 1]);
+            while (i < length && source.charAt(i) != '\n') {
+                i++;
+            }
+            if (i + 1 < length && i + 1 > bounds[n - 1]) {
+                bounds[n++] = i + 1;
+            }
+        }
+        bounds[n++] = length;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * This method runs the next pass of every chunk on the pool and waits for them.
+     */
+    private static void run(ForkJoinPool pool, Chunk[] chunks) {
+        for (Chunk chunk : chunks) {
+            chunk.reinitialize();
+            pool.execute(chunk);
+        }
+        for (Chunk chunk : chunks) {
+            chunk.join();
+        }
+    }
+
+    /**
+     * This class is a chunk of the source. Its first run scans it, and its second
+     * run lexes it.
+     */
+    @SuppressWarnings("serial")
+    private static class Chunk extends RecursiveAction {
+        private CharSequence source;
+        private LineIndex lines;
+        private int start;
+        private int end;
+        private boolean last;
+        private boolean scanned;
+
+        // Results of the scan
+        private boolean[] endsInComment;
+        private boolean echoes;
+
+        // Starting state, known after the scan of the previous chunks
+        private boolean inComment;
+
+        // Results of the lexing
+        private TokenBuffer tokens;
+        private IdentifierTable identifiers;
+        private Error error;
+        private IOException ioError;
+
+        Chunk(CharSequence source, LineIndex lines, int start, int end, boolean last) {
+            this.source = source;
+            this.lines = lines;
+            this.start = start;
+            this.end = end;
+            this.last = last;
+            this.scanned = false;
+            this.endsInComment = new boolean[2];
+        }
+
+        @Override
+        protected void compute() {
+            if (!scanned) {
+                findEchoes();
+                endsInComment[0] = scan(false);
+                endsInComment[1] = scan(true);
+                scanned = true;
+            } else {
+                try {
+                    lex();
+                } catch (Error e) {
+                    error = e;
+                } catch (IOException e) {
+                    ioError = e;
+                }
+            }
+        }
+
+        /**
+         * This method looks for the line terminators which the lexer echoes.
+         */
+        private void findEchoes() {
+            for (int i = start; i < end; i++) {
+                char c = source.charAt(i);
+                if (c == 0x0B || c == 0x0C || c == 0x85 || c == 0x2028 || c == 0x2029) {
+                    echoes = true;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * This method follows the opening and the closing of the long comments.
+         * Only "%%" and "::" need to be recognized, since no other token contains
+         * '%' or ':' as its first character.
+         *
+         * @param inComment true if the chunk starts inside a long comment.
+         * @return true if the chunk ends inside a long comment.
+         */
+        private boolean scan(boolean inComment) {
+            int i = start;
+            while (i < end) {
+                char c = source.charAt(i);
+                char next = i + 1 < end ? source.charAt(i + 1) : 0;
+                if (c == '%' && next == '%') {
+                    inComment = !inComment;
+                    i += 2;
+                } else if (!inComment && c == ':' && next == ':') {
+                    while (i < end && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+                        i++;
+                    }
+                } else {
+                    i++;
+                }
+            }
+            return inComment;
+        }
+
+        /**
+         * This method lexes the chunk from its starting position and state.
+         * The EOS token ending the chunk is kept, even if it is not the last one.
+         */
+        private void lex() throws IOException {
+            Lexer lexer = new Lexer(new StringReader(source.subSequence(start, end).toString()));
+            lexer.startChunk(start, inComment, last);
+            lexer.setLineIndex(lines);
+            identifiers = lexer.getIdentifiers();
+            tokens = new TokenBuffer(source, identifiers, lines);
+            Symbol token;
+            do {
+                token = lexer.yylex();
+                tokens.add(token.getType(), (int) lexer.getOffset(), lexer.yylength());
+            } while (token.getType() != LexicalUnit.EOS);
+        }
+    }
+}
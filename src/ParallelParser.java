@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class parses the top-level instructions of a program with several
+ * threads of a ForkJoinPool.
+ * The instructions of the main code block are separated by the commas which
+ * are not inside an IF or a WHILE, so their bounds are found in one pass over
+ * the tokens, by counting the IF and WHILE against their END. The instructions
+ * are then cut into groups of about the same number of tokens, and each group
+ * is parsed by its own Parser. The results of the groups are finally joined in
+ * order, with the rules of the program and of the end of the main code block,
+ * which gives the derivation or the simplified tree the Parser would have
+ * built alone.
+ * The variables are checked in the order of the tokens, as a single Parser
+ * does: the parser of a group collects the variables used before being
+ * declared in the group, and they are checked against the variables declared
+ * in the previous groups when the groups are joined.
+ * When the tokens cannot be cut or a group has a syntax error, the methods
+ * return null, so that the program is parsed again by a single Parser which
+ * throws the right error.
+ * The parsers share the IdentifierTable of the tokens: this is only safe since
+ * the lexer has already put all the variable names in it.
+ */
+public class ParallelParser {
+    private static final int MIN_GROUP_TOKENS = 1 << 16;
+    private static final int GROUPS_PER_THREAD = 4;
+
+    private ParallelParser() {
+    }
+
+    /**
+     * This method records the derivation of the program on the pool, with groups
+     * of at least 65536 tokens.
+     *
+     * @param tokens  the tokens of the program, ending with EOS.
+     * @param pool    the pool running the parsers.
+     * @param symbols the table of the variables, in which the declared variables
+     *                are marked.
+     * @return the derivation, or null if the program has to be parsed by a single
+     *         Parser.
+     * @throws Exception if a variable is used before being declared.
+     */
+    public static Derivation parse(TokenBuffer tokens, ForkJoinPool pool, SymbolTable symbols) throws Exception {
+        return parse(tokens, pool, groupCount(tokens, pool), symbols);
+    }
+
+    /**
+     * This method records the derivation of the program, like Parser.parse().
+     *
+     * @param tokens     the tokens of the program, ending with EOS.
+     * @param pool       the pool running the parsers.
+     * @param groupCount the number of groups wanted. There may be fewer groups
+     *                   if the program has too few instructions.
+     * @param symbols    the table of the variables, in which the declared
+     *                   variables are marked.
+     * @return the derivation, or null if the program has to be parsed by a single
+     *         Parser.
+     * @throws Exception if a variable is used before being declared.
+     */
+    public static Derivation parse(TokenBuffer tokens, ForkJoinPool pool, int groupCount, SymbolTable symbols)
+            throws Exception {
+        Group[] groups = run(tokens, pool, groupCount, false, symbols);
+        if (groups == null) {
+            return null;
+        }
+        Derivation derivation = new Derivation(LexicalUnit.PROGRAM_, tokens, 0);
+        derivation.addRule(1);
+        for (Group group : groups) {
+            derivation.append(group.derivation);
+            group.derivation = null;
+        }
+        derivation.addRule(3);
+        derivation.trimToSize();
+        return derivation;
+    }
+
+    /**
+     * This method builds the simplified tree of the program on the pool, with
+     * groups of at least 65536 tokens.
+     *
+     * @param tokens  the tokens of the program, ending with EOS.
+     * @param pool    the pool running the parsers.
+     * @param symbols the table of the variables, in which the declared variables
+     *                are marked.
+     * @return the simplified tree, whose root is its last node, or null if the
+     *         program has to be parsed by a single Parser.
+     * @throws Exception if a variable is used before being declared.
+     */
+    public static FlatTree parseSimplified(TokenBuffer tokens, ForkJoinPool pool, SymbolTable symbols)
+            throws Exception {
+        return parseSimplified(tokens, pool, groupCount(tokens, pool), symbols);
+    }
+
+    /**
+     * This method builds the simplified tree of the program, like
+     * Parser.parseSimplified().
+     *
+     * @param tokens     the tokens of the program, ending with EOS.
+     * @param pool       the pool running the parsers.
+     * @param groupCount the number of groups wanted. There may be fewer groups
+     *                   if the program has too few instructions.
+     * @param symbols    the table of the variables, in which the declared
+     *                   variables are marked.
+     * @return the simplified tree, whose root is its last node, or null if the
+     *         program has to be parsed by a single Parser.
+     * @throws Exception if a variable is used before being declared.
+     */
+    public static FlatTree parseSimplified(TokenBuffer tokens, ForkJoinPool pool, int groupCount,
+            SymbolTable symbols) throws Exception {
+        Group[] groups = run(tokens, pool, groupCount, true, symbols);
+        if (groups == null) {
+            return null;
+        }
+        FlatTree tree = new FlatTree();
+        int count = 0;
+        for (Group group : groups) {
+            count += group.nodes.length;
+        }
+        int[] instructions = new int[count];
+        count = 0;
+        for (Group group : groups) {
+            int offset = tree.append(group.tree);
+            for (int node : group.nodes) {
+                instructions[count++] = node + offset;
+            }
+            group.tree = null;
+        }
+        int end = tokens.size() - 2;
+        int code = tree.add(LexicalUnit.CODE_, Grammar.getLabel(LexicalUnit.CODE_), instructions);
+        int begin = tree.add(LexicalUnit.BEGIN, text(tokens, 0));
+        int name = tree.add(LexicalUnit.PROGNAME, text(tokens, 1));
+        int last = tree.add(LexicalUnit.END, text(tokens, end));
+        tree.add(LexicalUnit.PROGRAM_, Grammar.getLabel(LexicalUnit.PROGRAM_), begin, name, code, last);
+        tree.trimToSize();
+        return tree;
+    }
+
+    /**
+     * This method parses the groups of instructions on the pool, and checks the
+     * variables of each group against the ones declared in the previous groups.
+     *
+     * @return the parsed groups, in order, or null if the program has to be
+     *         parsed by a single Parser.
+     */
+    private static Group[] run(TokenBuffer tokens, ForkJoinPool pool, int groupCount, boolean simplified,
+            SymbolTable symbols) throws Exception {
+        if (groupCount < 2) {
+            return null;
+        }
+        int[] starts = split(tokens);
+        if (starts == null) {
+            return null;
+        }
+        int n = starts.length - 1;
+        ArrayList<Group> groups = new ArrayList<>(groupCount);
+        int first = 0;
+        for (int g = 1; g <= groupCount && first < n; g++) {
+            int bound = starts[0] + (int) ((long) (starts[n] - starts[0]) * g / groupCount);
+            int last = first + 1;
+            while (last < n && starts[last] < bound) {
+                last++;
+            }
+            groups.add(new Group(tokens, starts[first], last - first, starts[last], simplified));
+            first = last;
+        }
+
+        for (Group group : groups) {
+            pool.execute(group);
+        }
+        SymbolTable declared = new SymbolTable(tokens.getIdentifiers());
+        for (Group group : groups) {
+            group.join();
+            for (Symbol use : group.undeclaredUses) {
+                if (!declared.isDeclared(use.getId())) {
+                    throw new Exception("Variable " + use.getValue() + " is not declared");
+                }
+            }
+            if (group.error != null) {
+                return null;
+            }
+            declared.declareAll(group.declared);
+        }
+        symbols.declareAll(declared);
+        return groups.toArray(new Group[0]);
+    }
+
+    private static int groupCount(TokenBuffer tokens, ForkJoinPool pool) {
+        if (pool.getParallelism() < 2) {
+            // a single thread parses faster without joining the groups
+            return 1;
+        }
+        return Math.min(pool.getParallelism() * GROUPS_PER_THREAD, tokens.size() / MIN_GROUP_TOKENS);
+    }
+
+    /**
+     * This method finds the first token of every top-level instruction.
+     *
+     * @return the indexes of the first tokens of the instructions, followed by
+     *         the index of the END of the program, or null if the tokens are not
+     *         those of a program.
+     */
+    private static int[] split(TokenBuffer tokens) {
+        int size = tokens.size();
+        if (size < 4 || tokens.getType(0) != LexicalUnit.BEGIN || tokens.getType(1) != LexicalUnit.PROGNAME) {
+            return null;
+        }
+        int[] starts = new int[64];
+        int count = 0;
+        int start = 2;
+        int depth = 0;
+        for (int i = 2; i < size; i++) {
+            switch (tokens.getType(i)) {
+                case IF:
+                case WHILE:
+                    depth++;
+                    break;
+                case END:
+                    if (depth == 0) {
+                        if (i != start || i != size - 2) {
+                            return null;
+                        }
+                        if (count == starts.length) {
+                            starts = Arrays.copyOf(starts, count * 2);
+                        }
+                        starts[count++] = i;
+                        return Arrays.copyOf(starts, count);
+                    }
+                    depth--;
+                    break;
+                case COMMA:
+                    if (depth == 0) {
+                        if (count == starts.length) {
+                            starts = Arrays.copyOf(starts, count * 2);
+                        }
+                        starts[count++] = start;
+                        start = i + 1;
+                    }
+                    break;
+                default:
+            }
+        }
+        return null;
+    }
+
+    private static String text(TokenBuffer tokens, int i) {
+        return tokens.getSymbol(i).getValue().toString();
+    }
+
+    /**
+     * This class is a group of consecutive top-level instructions, parsed by its
+     * own Parser.
+     */
+    @SuppressWarnings("serial")
+    private static class Group extends RecursiveAction {
+        private TokenBuffer tokens;
+        private int start;
+        private int count;
+        private int end;
+        private boolean simplified;
+
+        // Results of the parsing
+        private Derivation derivation;
+        private FlatTree tree;
+        private int[] nodes;
+        private SymbolTable declared;
+        private ArrayList<Symbol> undeclaredUses;
+        private Exception error;
+
+        Group(TokenBuffer tokens, int start, int count, int end, boolean simplified) {
+            this.tokens = tokens;
+            this.start = start;
+            this.count = count;
+            this.end = end;
+            this.simplified = simplified;
+            this.undeclaredUses = new ArrayList<>();
+        }
+
+        @Override
+        protected void compute() {
+            TokenStream stream = new TokenStream(tokens, start);
+            Parser parser = new Parser(stream);
+            parser.collectUndeclaredUses(undeclaredUses);
+            try {
+                if (simplified) {
+                    nodes = parser.parseSimplifiedItems(count);
+                    tree = parser.getSimplifiedTree();
+                } else {
+                    parser.parseItems(count);
+                    derivation = parser.getDerivation();
+                }
+                if (stream.getPosition() != end) {
+                    throw new Exception("The instructions do not end at their bound");
+                }
+            } catch (Exception e) {
+                error = e;
+            }
+            declared = parser.getSymbolTable();
+        }
+    }
+}
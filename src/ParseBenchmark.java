@@ -0,0 +1,33 @@
+import java.io.StringReader;
+
+/**
+ * This class measures how the time taken by the Parser grows with the size of
+ * the program. The programs are made of one long list of assignments, so that
+ * the rules of the lists and of the expressions are repeated many times. They
+ * have 10000, 100000 tokens and so on, up to the number given as argument
+ * (10000000 by default). The tokens are lexed first, and only the parse is
+ * timed. With a linear parser, the time per token stays about the same.
+ */
+public class ParseBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        for (int n = 10000; n <= max && n <= 100000000; n *= 10) {
+            StringBuilder source = new StringBuilder("BEGIN Benchmark\n  a := 0 ,\n");
+            // each assignment has six tokens
+            for (int i = 0; i < n / 6; i++) {
+                source.append("  a := a + ").append(i).append(" ,\n");
+            }
+            source.append("END\n");
+            String text = source.toString();
+            TokenBuffer tokens = TokenBuffer.lex(new Lexer(new StringReader(text)), text);
+            source = null;
+
+            long start = System.nanoTime();
+            new Parser(new TokenStream(tokens)).parse();
+            long time = System.nanoTime() - start;
+            System.out.println(tokens.size() + " tokens: " + time / 1000000 + " ms (" + time / tokens.size()
+                    + " ns per token)");
+        }
+    }
+}
@@ -1,5 +1,5 @@
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * A skeleton class to represent parse trees. The arity is not fixed: a node can
@@ -18,13 +18,15 @@ public class ParseTree {
     private List<ParseTree> children; // Its children, which are trees themselves
 
     /**
-     * Creates a singleton tree with only a root labeled by lbl.
+     * Creates a singleton tree with only a root labeled by lbl. All the leaves
+     * share the same empty and immutable list of children, so the children of a
+     * leaf are given with setChildren.
      * 
      * @param lbl The label of the root
      */
     public ParseTree(Symbol lbl) {
         this.label = lbl;
-        this.children = new ArrayList<ParseTree>(); // This tree has no children
+        this.children = Collections.emptyList(); // This tree has no children
     }
 
     /**
@@ -1,53 +1,108 @@
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class represents the parser for the grammar of the FORTRESS language.
+ * It is a table-driven LL(1) parser: the rules and the parse table are given by
+ * the Grammar class, and the derivation is driven by an explicit stack instead
+ * of one recursive method per variable.
+ * The parser does not build the parse tree itself: it records the left-most
+ * derivation, from which the tree is built when it is asked for.
  */
 public class Parser {
-    private ArrayList<Symbol> tokens;
-    private ArrayList<Symbol> variables;
-    private ArrayList<Integer> leftMostDerivationArray;
-    private ParseTree parseTree;
+    private TokenStream tokens;
+    private SymbolTable symbols;
+    private Writer derivationOutput;
+    private boolean checkingVariables;
+    private List<Symbol> undeclaredUses;
+    private ForkJoinPool pool;
+    private Derivation derivation;
+    private FlatTree simplifiedTree;
+    private int simplifiedRoot;
+    private LexicalUnit[] stackSymbols;
+    private int[] stackRules;
+    private int[] values;
+    private int valueCount;
 
     /**
      * This is the constructor of the parser class.
      * 
-     * @param tokens The list of tokens to parse.
+     * @param tokens The stream of tokens to parse.
      */
-    public Parser(ArrayList<Symbol> tokens) {
+    public Parser(TokenStream tokens) {
         this.tokens = tokens;
-        this.variables = new ArrayList<>();
-        this.leftMostDerivationArray = new ArrayList<>();
-        this.parseTree = null;
+        this.symbols = new SymbolTable(tokens.getIdentifiers());
+        this.derivationOutput = null;
+        this.checkingVariables = true;
+        this.undeclaredUses = null;
+        this.pool = null;
+        this.derivation = null;
+        this.simplifiedTree = null;
+        this.simplifiedRoot = FlatTree.NONE;
+        this.stackSymbols = new LexicalUnit[64];
+        this.stackRules = new int[64];
+        this.values = new int[64];
+        this.valueCount = 0;
     }
 
     /**
-     * This is the getter of the parse tree generated.
+     * This is the getter of the parse tree generated. The tree is not kept by the
+     * parser: it is built again from the derivation at each call, so that it can
+     * be freed as soon as the caller is done with it.
      * 
-     * @return the parse tree.
+     * @return the parse tree, or null if parse() has not been called.
      */
     public ParseTree getParseTree() {
-        return parseTree;
+        return derivation == null ? null : derivation.toParseTree();
     }
 
     /**
-     * This method returns the next token to handle. If the list of tokens is empty,
-     * it returns a null.
+     * This is the getter of the left-most derivation recorded by parse().
      * 
-     * @return the next token.
+     * @return the derivation.
      */
-    Symbol next_token() {
-        Symbol currToken;
+    public Derivation getDerivation() {
+        return derivation;
+    }
 
-        if (tokens.size() != 0) {
-            currToken = tokens.get(0);
-        } else {
-            currToken = null;
-        }
+    /**
+     * This is the getter of the simplified tree built by parseSimplified().
+     * 
+     * @return the simplified tree.
+     */
+    public FlatTree getSimplifiedTree() {
+        return simplifiedTree;
+    }
+
+    /**
+     * @return the root of the simplified tree, which is its <Program> node.
+     */
+    public int getSimplifiedRoot() {
+        return simplifiedRoot;
+    }
 
-        return currToken;
+    /**
+     * This is the getter of the variables of the program, declared while parsing.
+     * 
+     * @return the symbol table.
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * This method returns the next token to handle without consuming it. Once the
+     * end of the input is reached, it returns the EOS token.
+     * 
+     * @return the next token.
+     * @throws IOException if the lexer cannot read its input.
+     */
+    Symbol next_token() throws IOException {
+        return tokens.peek();
     }
 
     /**
@@ -59,14 +114,24 @@ public class Parser {
      * @throws Exception throw an exception if there is a syntax error.
      */
     ParseTree match(LexicalUnit lu) throws Exception {
-        Symbol s = null;
-        if (lu == tokens.get(0).getType()) {
-            s = new Symbol(lu, tokens.get(0).getValue().toString());
-            tokens.remove(0);
-        } else {
+        Symbol tok = matchToken(lu);
+        return new ParseTree(Symbol.label(lu, tok.getValue().toString()));
+    }
+
+    /**
+     * This method consumes the next token if it corresponds to the expected
+     * lexical unit given in parameter.
+     * 
+     * @param lu the expected lexical unit
+     * @return the token matched.
+     * @throws Exception throw an exception if there is a syntax error.
+     */
+    Symbol matchToken(LexicalUnit lu) throws Exception {
+        Symbol tok = next_token();
+        if (lu != tok.getType()) {
             syntax_error(Arrays.asList(lu));
         }
-        return new ParseTree(s);
+        return tokens.next();
     }
 
     /**
@@ -78,494 +143,476 @@ public class Parser {
      *                   the list of lexical units that were expected.
      */
     void syntax_error(List<LexicalUnit> expected) throws Exception {
-        int line = tokens.get(0).getLine();
-        int column = tokens.get(0).getColumn();
+        Symbol tok = next_token();
+        int line = tokens.getLineIndex().getLine(tok.getOffset()) + 1;
+        int column = tokens.getLineIndex().getColumn(tok.getOffset());
         String expectedString = "";
 
         if (expected.size() == 1) {
             expectedString += expected.get(0).toString();
         } else {
-            for (int i = 0; i < expected.size() - 2; i++) {
+            for (int i = 0; i < expected.size() - 1; i++) {
                 expectedString += expected.get(i).toString() + ", ";
             }
             expectedString += expected.get(expected.size() - 1).toString();
         }
 
         throw new Exception("Syntax Error ! Unexpected symbol at line: " + line + ", col: " + column + ". "
-                + "Found '" + tokens.get(0).getValue() + "' as " + tokens.get(0).getType() + ". "
+                + "Found '" + tok.getValue() + "' as " + tok.getType() + ". "
                 + "(Expecting: " + expectedString + ")");
     }
 
     /**
-     * This method converts the list of integer (which represents the number of the
-     * applied rules) of the attribute "leftMostDerivationArray" into a String with
-     * comma between each rule to be easily print.
+     * This method makes the parser write the left-most derivation (the numbers of
+     * the applied rules, separated by spaces) to the given writer, one rule at a
+     * time as it is applied. Without it, the derivation is not recorded at all.
+     * The writer should be buffered, and is not closed by the parser.
      * 
-     * @return The String representing the list of rules of the left-most
-     *         derivation.
+     * @param derivation The writer receiving the derivation, or null for none.
      */
-    String getLeftMostDerivation() {
-        String derivation = "";
-
-        for (int i = 0; i < this.leftMostDerivationArray.size(); i++) {
-            derivation += this.leftMostDerivationArray.get(i) + " ";
-        }
-
-        return derivation;
+    void setDerivationOutput(Writer derivation) {
+        this.derivationOutput = derivation;
     }
 
     /**
-     * This method starts the parsing and print the left-most derivation if the
-     * parsing did not meet any syntax error.
+     * This method turns off the check that the variables are declared before
+     * being used, for a caller checking them on its own, like the
+     * IncrementalParser which re-parses a program piece by piece.
      * 
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @param checking False to skip the checks.
      */
-    void parse() throws Exception {
-        this.parseTree = program();
-        match(LexicalUnit.EOS);
-        //System.out.println(getLeftMostDerivation());
+    void setVariableChecks(boolean checking) {
+        this.checkingVariables = checking;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Program> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
+     * This method makes the parser add to the given list the uses of the
+     * variables which have not been declared before in the parsed tokens,
+     * instead of throwing an exception. Only the first such use of each variable
+     * is added. It is used by the ParallelParser, whose parsers only see a part
+     * of the program.
      * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @param uses The list receiving the tokens of the uses.
      */
-    ParseTree program() throws Exception {
-        leftMostDerivationArray.add(1);
-        ParseTree pt1 = match(LexicalUnit.BEGIN);
-        ParseTree pt2 = match(LexicalUnit.PROGNAME);
-        ParseTree pt3 = code();
-        ParseTree pt4 = match(LexicalUnit.END);
-        return new ParseTree(new Symbol(LexicalUnit.PROGRAM_, "<Program>"),
-                Arrays.asList(pt1, pt2, pt3, pt4));
-
+    void collectUndeclaredUses(List<Symbol> uses) {
+        this.undeclaredUses = uses;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Code> as left-hand
-     * side. This method throws an exception if it meet an unexpected lexical unit.
+     * This method makes parse() and parseSimplified() parse the top-level
+     * instructions concurrently on the given pool, with the ParallelParser.
+     * This is only done when the tokens are in a TokenBuffer and the derivation
+     * is not written, since the rules would not be applied in order.
      * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @param pool The pool running the parsers, or null to parse sequentially.
      */
-    ParseTree code() throws Exception {
-        Symbol tok = next_token();
-        switch (tok.getType()) {
-            case ELSE:
-            case END:
-                leftMostDerivationArray.add(3);
-                return new ParseTree(new Symbol(LexicalUnit.CODE_, "<Code>"),
-                        Arrays.asList(new ParseTree(new Symbol(LexicalUnit.EPSILON, "E"))));
-            default:
-        }
-        leftMostDerivationArray.add(2);
-        ParseTree pt1 = instruction();
-        ParseTree pt2 = match(LexicalUnit.COMMA);
-        ParseTree pt3 = code();
-        return new ParseTree(new Symbol(LexicalUnit.CODE_, "<Code>"),
-                Arrays.asList(pt1, pt2, pt3));
+    void setPool(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Instruction> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
+     * This method starts the parsing. It records the left-most derivation of the
+     * program, given by getDerivation(), from which getParseTree() builds the
+     * parse tree.
      * 
-     * @return The parse tree at the corresponding level of this rule.
      * @throws Exception Throws an exception if the lexical unit do not correspond
      *                   to what the parser was expecting.
      */
-    ParseTree instruction() throws Exception {
-        Symbol tok = next_token();
-        ParseTree pt = null;
-        switch (tok.getType()) {
-            case VARNAME:
-                leftMostDerivationArray.add(4);
-                pt = assign();
-                break;
-            case IF:
-                leftMostDerivationArray.add(5);
-                pt = if_();
-                break;
-            case WHILE:
-                leftMostDerivationArray.add(6);
-                pt = while_();
-                break;
-            case PRINT:
-                leftMostDerivationArray.add(7);
-                pt = print();
-                break;
-            case READ:
-                leftMostDerivationArray.add(8);
-                pt = read();
-                break;
-            default:
-                syntax_error(Arrays.asList(LexicalUnit.VARNAME, LexicalUnit.IF,
-                        LexicalUnit.WHILE, LexicalUnit.PRINT, LexicalUnit.READ));
+    void parse() throws Exception {
+        if (pool != null && derivationOutput == null && tokens.getBuffer() != null) {
+            this.derivation = ParallelParser.parse(tokens.getBuffer(), pool, symbols);
+            if (this.derivation != null) {
+                return;
+            }
         }
-        return new ParseTree(new Symbol(LexicalUnit.INSTRUCTION_, "<Instruction>"), Arrays.asList(pt));
+        this.derivation = newDerivation(LexicalUnit.PROGRAM_);
+        derive(LexicalUnit.PROGRAM_, false);
+        this.derivation.trimToSize();
+        match(LexicalUnit.EOS);
     }
 
-    /**
-     * This method handles the parsing of the rules comming from <Assign> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
-     * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
-     */
-    ParseTree assign() throws Exception {
-        leftMostDerivationArray.add(9);
-        ParseTree pt1 = match(LexicalUnit.VARNAME);
-        variables.add(pt1.getLabel());
-        ParseTree pt2 = match(LexicalUnit.ASSIGN);
-        ParseTree pt3 = exprArith();
-        return new ParseTree(new Symbol(LexicalUnit.ASSIGN_, "<Assign>"), Arrays.asList(pt1, pt2, pt3));
+    private Derivation newDerivation(LexicalUnit start) {
+        TokenBuffer buffer = tokens.getBuffer();
+        return buffer == null ? new Derivation(start) : new Derivation(start, buffer, tokens.getPosition());
     }
 
     /**
-     * This method handles the parsing of the rules comming from <ExprArith> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
+     * This method parses one instruction of a code block and the comma following
+     * it, at the current position of the stream.
      * 
-     * @return The parse tree at the corresponding level of this rule.
+     * @return The <Code> node of rule 2 holding the instruction and the comma, to
+     *         which the tree of the rest of the code block remains to be added.
      * @throws Exception Throws an exception if the lexical unit do not correspond
      *                   to what the parser was expecting.
      */
-    ParseTree exprArith() throws Exception {
-        leftMostDerivationArray.add(10);
-        ParseTree pt1 = mulDiv();
-        ParseTree pt2 = exprArithQuote();
-        return new ParseTree(new Symbol(LexicalUnit.EXPRARITH_, "<ExprArith>"), Arrays.asList(pt1, pt2));
+    ParseTree parseCodeItem() throws Exception {
+        this.derivation = newDerivation(LexicalUnit.INSTRUCTION_);
+        derive(LexicalUnit.INSTRUCTION_, false);
+        ParseTree code = new ParseTree(Symbol.label(LexicalUnit.CODE_, Grammar.getLabel(LexicalUnit.CODE_)),
+                new ArrayList<>(3));
+        code.getChildren().add(derivation.toParseTree());
+        Symbol comma = matchToken(LexicalUnit.COMMA);
+        code.getChildren().add(new ParseTree(Symbol.label(LexicalUnit.COMMA, comma.getValue().toString())));
+        return code;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <ExprArith'> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
+     * This method parses instructions of a code block, each one followed by its
+     * comma, from the current position of the stream. The derivation given by
+     * getDerivation() applies rule 2 to each instruction, but not the rule ending
+     * the code block.
      * 
-     * @return The parse tree at the corresponding level of this rule.
+     * @param count The number of instructions to parse.
      * @throws Exception Throws an exception if the lexical unit do not correspond
      *                   to what the parser was expecting.
      */
-    ParseTree exprArithQuote() throws Exception {
-        Symbol tok = next_token();
-        ParseTree pt1 = null;
-        switch (tok.getType()) {
-            case COMMA:
-            case RPAREN:
-            case EQUAL:
-            case SMALLER:
-            case GREATER:
-                leftMostDerivationArray.add(13);
-                return new ParseTree(new Symbol(LexicalUnit.EXPRARITHQUOTE_, "<ExprArith'>"),
-                        Arrays.asList(new ParseTree(new Symbol(LexicalUnit.EPSILON, "E"))));
-            case PLUS:
-                leftMostDerivationArray.add(11);
-                pt1 = match(LexicalUnit.PLUS);
-                break;
-            case MINUS:
-                leftMostDerivationArray.add(12);
-                pt1 = match(LexicalUnit.MINUS);
-                break;
-            default:
-                syntax_error(Arrays.asList(LexicalUnit.COMMA, LexicalUnit.RPAREN,
-                        LexicalUnit.EQUAL, LexicalUnit.SMALLER, LexicalUnit.GREATER,
-                        LexicalUnit.PLUS, LexicalUnit.MINUS));
+    void parseItems(int count) throws Exception {
+        this.derivation = newDerivation(LexicalUnit.CODE_);
+        for (int i = 0; i < count; i++) {
+            derivation.addRule(2);
+            derive(LexicalUnit.INSTRUCTION_, false);
+            Symbol comma = matchToken(LexicalUnit.COMMA);
+            derivation.addToken(LexicalUnit.COMMA, comma.getValue().toString());
         }
-        ParseTree pt2 = mulDiv();
-        ParseTree pt3 = exprArithQuote();
-        return new ParseTree(new Symbol(LexicalUnit.EXPRARITHQUOTE_, "<ExprArith'>"), Arrays.asList(pt1, pt2, pt3));
+        this.derivation.trimToSize();
     }
 
     /**
-     * This method handles the parsing of the rules comming from <MulDiv> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
+     * This method parses instructions of a code block, each one followed by its
+     * comma, into the simplified tree, from the current position of the stream.
      * 
-     * @return The parse tree at the corresponding level of this rule.
+     * @param count The number of instructions to parse.
+     * @return The nodes of the instructions in getSimplifiedTree().
      * @throws Exception Throws an exception if the lexical unit do not correspond
      *                   to what the parser was expecting.
      */
-    ParseTree mulDiv() throws Exception {
-        leftMostDerivationArray.add(14);
-        ParseTree pt1 = atom();
-        ParseTree pt2 = mulDivQuote();
-        return new ParseTree(new Symbol(LexicalUnit.MULDIV_, "<MulDiv>"), Arrays.asList(pt1, pt2));
+    int[] parseSimplifiedItems(int count) throws Exception {
+        this.simplifiedTree = new FlatTree();
+        int[] items = new int[count];
+        for (int i = 0; i < count; i++) {
+            derive(LexicalUnit.INSTRUCTION_, true);
+            items[i] = values[--valueCount];
+            matchToken(LexicalUnit.COMMA);
+        }
+        this.simplifiedTree.trimToSize();
+        return items;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <MulDiv'> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
+     * This method parses the input like parse(), but without building the parse
+     * tree: it directly builds the tree that the TreeSimplifier would return for
+     * it, in the arrays of a FlatTree given by getSimplifiedTree().
      * 
-     * @return The parse tree at the corresponding level of this rule.
      * @throws Exception Throws an exception if the lexical unit do not correspond
      *                   to what the parser was expecting.
      */
-    ParseTree mulDivQuote() throws Exception {
-        Symbol tok = next_token();
-        ParseTree pt1 = null;
-        switch (tok.getType()) {
-            case COMMA:
-            case RPAREN:
-            case EQUAL:
-            case SMALLER:
-            case GREATER:
-            case PLUS:
-            case MINUS:
-                leftMostDerivationArray.add(17);
-                return new ParseTree(new Symbol(LexicalUnit.MULDIVQUOTE_, "<MulDiv'>"),
-                        Arrays.asList(new ParseTree(new Symbol(LexicalUnit.EPSILON, "E"))));
-            case TIMES:
-                leftMostDerivationArray.add(15);
-                pt1 = match(LexicalUnit.TIMES);
-                break;
-            case DIVIDE:
-                leftMostDerivationArray.add(16);
-                pt1 = match(LexicalUnit.DIVIDE);
-                break;
-            default:
-                syntax_error(Arrays.asList(LexicalUnit.COMMA, LexicalUnit.RPAREN,
-                        LexicalUnit.EQUAL, LexicalUnit.SMALLER, LexicalUnit.GREATER,
-                        LexicalUnit.PLUS, LexicalUnit.MINUS, LexicalUnit.TIMES,
-                        LexicalUnit.DIVIDE));
+    void parseSimplified() throws Exception {
+        if (pool != null && derivationOutput == null && tokens.getBuffer() != null) {
+            this.simplifiedTree = ParallelParser.parseSimplified(tokens.getBuffer(), pool, symbols);
+            if (this.simplifiedTree != null) {
+                this.simplifiedRoot = simplifiedTree.size() - 1;
+                return;
+            }
         }
-        ParseTree pt2 = atom();
-        ParseTree pt3 = mulDivQuote();
-        return new ParseTree(new Symbol(LexicalUnit.MULDIVQUOTE_, "<MulDiv'>"), Arrays.asList(pt1, pt2, pt3));
+        this.simplifiedTree = new FlatTree();
+        derive(LexicalUnit.PROGRAM_, true);
+        this.simplifiedRoot = values[--valueCount];
+        this.simplifiedTree.trimToSize();
+        match(LexicalUnit.EOS);
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Atom> as left-hand
-     * side. This method throws an exception if it meet an unexpected lexical unit.
+     * This method derives a variable of the grammar from the next tokens. It
+     * replaces the recursive descent by an explicit stack of the symbols still
+     * to be matched or derived, so that the depth of the Java stack does not
+     * depend on the input. The top of the stack is always the left-most symbol,
+     * so the rules are applied in the order of the left-most derivation, and
+     * each one is chosen by the parse table of the Grammar from the next token.
+     * 
+     * To build the simplified tree, the right-hand side of a rule is pushed
+     * above a marker of the end of the rule. The trees of the symbols of the
+     * rule are put on a stack of values as they are completed, and the marker
+     * combines them with reduce() once they are all there. The nodes are created
+     * in the FlatTree simplifiedTree.
+     * Otherwise, the rules applied and the tokens matched are added to the
+     * Derivation derivation.
      * 
-     * @return The parse tree at the corresponding level of this rule.
+     * @param start      The variable to derive.
+     * @param simplified True to build the simplified tree instead of recording
+     *                   the derivation. The root of the simplified tree is then
+     *                   left on the stack of values.
      * @throws Exception Throws an exception if the lexical unit do not correspond
      *                   to what the parser was expecting.
      */
-    ParseTree atom() throws Exception {
-        Symbol tok = next_token();
-        ParseTree pt1 = null;
-        ParseTree pt2 = null;
-        ParseTree pt3 = null;
-        switch (tok.getType()) {
-            case MINUS:
-                leftMostDerivationArray.add(18);
-                pt1 = match(LexicalUnit.MINUS);
-                pt2 = atom();
-                break;
-            case VARNAME:
-                leftMostDerivationArray.add(19);
-                pt1 = match(LexicalUnit.VARNAME);
-                if(!variableExist(pt1.getLabel().getValue().toString())){
-                    throw new Exception("Variable " + pt1.getLabel().getValue().toString() + " is not declared");
+    void derive(LexicalUnit start, boolean simplified) throws Exception {
+        int size = 0;
+        push(start, Grammar.NO_RULE, size++);
+        while (size > 0) {
+            size--;
+            LexicalUnit symbol = stackSymbols[size];
+            int rule = stackRules[size];
+
+            if (symbol == null) {
+                reduce(rule);
+                continue;
+            }
+
+            if (Grammar.isTerminal(symbol)) {
+                Symbol tok = matchToken(symbol);
+                String value = tok.getValue().toString();
+                if (symbol == LexicalUnit.VARNAME && checkingVariables) {
+                    checkVariable(rule, tok);
+                } else if (symbol == LexicalUnit.NUMBER && value.length() >= 19) {
+                    checkNumber(tok, value);
+                }
+                if (simplified) {
+                    pushValue(isKept(symbol, rule) ? simplifiedTree.add(symbol, value) : FlatTree.NONE);
+                    continue;
+                }
+                derivation.addToken(symbol, value);
+            } else {
+                int applied = Grammar.getRule(symbol, next_token().getType());
+                if (applied == Grammar.NO_RULE) {
+                    syntax_error(Grammar.getExpected(symbol));
+                }
+                if (derivationOutput != null) {
+                    derivationOutput.write(Integer.toString(applied));
+                    derivationOutput.write(' ');
+                }
+                LexicalUnit[] right = Grammar.getRight(applied);
+                if (simplified) {
+                    push(null, applied, size++);
+                } else {
+                    derivation.addRule(applied);
+                }
+                for (int i = right.length - 1; i >= 0; i--) {
+                    push(right[i], applied, size++);
                 }
-                break;
-            case NUMBER:
-                leftMostDerivationArray.add(20);
-                pt1 = match(LexicalUnit.NUMBER);
-                break;
-            case LPAREN:
-                leftMostDerivationArray.add(21);
-                pt1 = match(LexicalUnit.LPAREN);
-                pt2 = exprArith();
-                pt3 = match(LexicalUnit.RPAREN);
-                break;
-            default:
-                syntax_error(Arrays.asList(LexicalUnit.VARNAME, LexicalUnit.NUMBER,
-                        LexicalUnit.LPAREN));
-        }
-        ArrayList<ParseTree> array = new ArrayList<>();
-        array.add(pt1);
-        if (pt2 != null) {
-            array.add(pt2);
-            if (pt3 != null) {
-                array.add(pt3);
             }
         }
-        return new ParseTree(new Symbol(LexicalUnit.ATOM_, "<Atom>"), array);
     }
 
     /**
-     * This method handles the parsing of the rules comming from <If> as left-hand
-     * side. This method throws an exception if it meet an unexpected lexical unit.
+     * This method puts a symbol on the stack of the derivation.
      * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @param symbol The symbol to match or derive, or null for the end of a rule.
+     * @param rule   The rule whose right-hand side contains the symbol.
+     * @param index  The position of the symbol on the stack.
      */
-    ParseTree if_() throws Exception {
-        leftMostDerivationArray.add(22);
-        ParseTree pt1 = match(LexicalUnit.IF);
-        ParseTree pt2 = match(LexicalUnit.LPAREN);
-        ParseTree pt3 = cond();
-        ParseTree pt4 = match(LexicalUnit.RPAREN);
-        ParseTree pt5 = match(LexicalUnit.THEN);
-        ParseTree pt6 = code();
-        ParseTree pt7 = ifSeq();
-        return new ParseTree(new Symbol(LexicalUnit.IF_, "<If>"), Arrays.asList(pt1, pt2, pt3, pt4, pt5, pt6, pt7));
+    private void push(LexicalUnit symbol, int rule, int index) {
+        if (index == stackSymbols.length) {
+            stackSymbols = Arrays.copyOf(stackSymbols, index * 2);
+            stackRules = Arrays.copyOf(stackRules, index * 2);
+        }
+        stackSymbols[index] = symbol;
+        stackRules[index] = rule;
     }
 
-    /**
-     * This method handles the parsing of the rules comming from <ifSeq> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
-     * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
-     */
-    ParseTree ifSeq() throws Exception {
-        Symbol tok = next_token();
-        ParseTree pt1 = null;
-        ParseTree pt2 = null;
-        ParseTree pt3 = null;
-        switch (tok.getType()) {
-            case END:
-                leftMostDerivationArray.add(23);
-                pt1 = match(LexicalUnit.END);
-                break;
-            case ELSE:
-                leftMostDerivationArray.add(24);
-                pt1 = match(LexicalUnit.ELSE);
-                pt2 = code();
-                pt3 = match(LexicalUnit.END);
-                break;
-            default:
-                syntax_error(Arrays.asList(LexicalUnit.ELSE, LexicalUnit.END));
+    private void pushValue(int value) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
         }
-        ArrayList<ParseTree> array = new ArrayList<>();
-        array.add(pt1);
-        if (pt2 != null) {
-            array.add(pt2);
-            array.add(pt3);
-        }
-        return new ParseTree(new Symbol(LexicalUnit.IFSEQ_, "<IfSeq>"), array);
+        values[valueCount++] = value;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Cond> as left-hand
-     * side. This method throws an exception if it meet an unexpected lexical unit.
-     * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * This method tells if the token matched in a rule appears in the simplified
+     * tree. The other tokens (keywords, parentheses, commas) are dropped.
      */
-    ParseTree cond() throws Exception {
-        leftMostDerivationArray.add(25);
-        ParseTree pt1 = exprArith();
-        ParseTree pt2 = comp();
-        ParseTree pt3 = exprArith();
-        return new ParseTree(new Symbol(LexicalUnit.COND_, "<Cond>"), Arrays.asList(pt1, pt2, pt3));
+    private static boolean isKept(LexicalUnit symbol, int rule) {
+        switch (symbol) {
+            case VARNAME:
+            case NUMBER:
+            case PLUS:
+            case TIMES:
+            case DIVIDE:
+            case EQUAL:
+            case GREATER:
+            case SMALLER:
+                return true;
+            case MINUS:
+                return rule == 12;
+            default:
+                return rule == 1;
+        }
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Comp> as left-hand
-     * side. This method throws an exception if it meet an unexpected lexical unit.
+     * This method replaces the values of the symbols of a rule by the simplified
+     * tree of the rule, in the shape given by the TreeSimplifier. The value of an
+     * epsilon rule is NONE. The value of <ExprArith'> and <MulDiv'> is the node of
+     * their first operator, whose children are its right operand and the node of
+     * the next operator, if any. The rule using them turns this chain into
+     * operations, with chain().
+     * The value of <Code> is a <Code> node, to which each enclosing rule 2 adds
+     * its instruction as first child.
      * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @param rule The rule whose right-hand side has been completed.
      */
-    ParseTree comp() throws Exception {
-        Symbol tok = next_token();
-        ParseTree pt1 = null;
-        switch (tok.getType()) {
-            case EQUAL:
-                leftMostDerivationArray.add(26);
-                pt1 = match(LexicalUnit.EQUAL);
+    private void reduce(int rule) {
+        int base = valueCount - Grammar.getRight(rule).length;
+        int[] v = values;
+        FlatTree tree = simplifiedTree;
+        int result;
+        switch (rule) {
+            case 1:
+                result = node(LexicalUnit.PROGRAM_, v[base], v[base + 1], v[base + 2], v[base + 3]);
                 break;
-            case SMALLER:
-                leftMostDerivationArray.add(28);
-                pt1 = match(LexicalUnit.SMALLER);
+            case 2:
+                result = v[base + 2];
+                tree.prepend(result, v[base]);
                 break;
-            case GREATER:
-                leftMostDerivationArray.add(27);
-                pt1 = match(LexicalUnit.GREATER);
+            case 3:
+                result = node(LexicalUnit.CODE_);
+                break;
+            case 9:
+                result = node(LexicalUnit.ASSIGN_, v[base], v[base + 2]);
+                break;
+            case 10:
+            case 14:
+                result = chain(v[base], v[base + 1]);
+                break;
+            case 11:
+            case 12:
+            case 15:
+            case 16:
+                // the operator token becomes the node of the operation
+                result = v[base];
+                if (v[base + 2] != FlatTree.NONE) {
+                    tree.prepend(result, v[base + 2]);
+                }
+                tree.prepend(result, v[base + 1]);
+                break;
+            case 18:
+                result = tree.add(LexicalUnit.MINUS, "-", v[base + 1]);
+                break;
+            case 21:
+            case 24:
+                result = v[base + 1];
+                break;
+            case 22:
+                if (v[base + 6] == FlatTree.NONE) {
+                    result = node(LexicalUnit.IF_, v[base + 2], v[base + 5]);
+                } else {
+                    result = node(LexicalUnit.IF_, v[base + 2], v[base + 5], v[base + 6]);
+                }
+                break;
+            case 25:
+                result = v[base + 1];
+                tree.prepend(result, v[base + 2]);
+                tree.prepend(result, v[base]);
+                break;
+            case 29:
+                result = node(LexicalUnit.WHILE_, v[base + 2], v[base + 5]);
+                break;
+            case 30:
+                result = node(LexicalUnit.PRINT_, v[base + 2]);
+                break;
+            case 31:
+                result = node(LexicalUnit.READ_, v[base + 2]);
+                break;
+            case 13:
+            case 17:
+            case 23:
+                result = FlatTree.NONE;
                 break;
             default:
-                syntax_error(Arrays.asList(LexicalUnit.EQUAL, LexicalUnit.SMALLER,
-                        LexicalUnit.GREATER));
+                // rules with a single symbol on the right-hand side keep its tree
+                result = v[base];
         }
-        return new ParseTree(new Symbol(LexicalUnit.COMP_, "<Comp>"), Arrays.asList(pt1));
+        valueCount = base;
+        pushValue(result);
+    }
+
+    private int node(LexicalUnit variable, int... children) {
+        return simplifiedTree.add(variable, Grammar.getLabel(variable), children);
     }
 
     /**
-     * This method handles the parsing of the rules comming from <While> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
+     * This method builds the operations of an arithmetic expression from its
+     * first operand and the chain of the following operators. The operations are
+     * applied from left to right. A run of + or of * is a single node with all
+     * the operands of the run as children. A - or a / has two children.
+     * The nodes of the operators which are merged into the first one of their
+     * run are left unused in the tree.
      * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @param operand  The tree of the first operand.
+     * @param operator The node of the first operator following it, or NONE if
+     *                 there is none.
+     * @return The tree of the expression.
      */
-    ParseTree while_() throws Exception {
-        leftMostDerivationArray.add(29);
-        ParseTree pt1 = match(LexicalUnit.WHILE);
-        ParseTree pt2 = match(LexicalUnit.LPAREN);
-        ParseTree pt3 = cond();
-        ParseTree pt4 = match(LexicalUnit.RPAREN);
-        ParseTree pt5 = match(LexicalUnit.DO);
-        ParseTree pt6 = code();
-        ParseTree pt7 = match(LexicalUnit.END);
-        return new ParseTree(new Symbol(LexicalUnit.WHILE_, "<While>"),
-                Arrays.asList(pt1, pt2, pt3, pt4, pt5, pt6, pt7));
+    private int chain(int operand, int operator) {
+        FlatTree tree = simplifiedTree;
+        int result = operand;
+        int base = valueCount;
+        while (operator != FlatTree.NONE) {
+            int node = operator;
+            LexicalUnit kind = tree.getKind(node);
+            pushValue(result);
+            do {
+                int right = tree.getFirstChild(operator);
+                operator = tree.getNextSibling(right);
+                pushValue(right);
+            } while (isAssociative(kind) && operator != FlatTree.NONE && tree.getKind(operator) == kind);
+            tree.setChildren(node, values, base, valueCount);
+            valueCount = base;
+            result = node;
+        }
+        return result;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Print> as
-     * left-hand side. This method throws an exception if it meet an unexpected
-     * lexical unit.
-     * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @return true for the operators whose runs make a single node.
      */
-    ParseTree print() throws Exception {
-        leftMostDerivationArray.add(30);
-        ParseTree pt1 = match(LexicalUnit.PRINT);
-        ParseTree pt2 = match(LexicalUnit.LPAREN);
-        ParseTree pt3 = match(LexicalUnit.VARNAME);
-        if(!variableExist(pt3.getLabel().getValue().toString())){
-            throw new Exception("Variable " + pt3.getLabel().getValue().toString() + " is not declared");
-        }
-        ParseTree pt4 = match(LexicalUnit.RPAREN);
-        return new ParseTree(new Symbol(LexicalUnit.PRINT_, "<Print>"), Arrays.asList(pt1, pt2, pt3, pt4));
+    static boolean isAssociative(LexicalUnit operator) {
+        return operator == LexicalUnit.PLUS || operator == LexicalUnit.TIMES;
     }
 
     /**
-     * This method handles the parsing of the rules comming from <Read> as left-hand
-     * side. This method throws an exception if it meet an unexpected lexical unit.
+     * This method checks that a number of 19 digits or more fits in a long, which
+     * is the type of the values of the program.
      * 
-     * @return The parse tree at the corresponding level of this rule.
-     * @throws Exception Throws an exception if the lexical unit do not correspond
-     *                   to what the parser was expecting.
+     * @param number The token of the number.
+     * @param value  The digits of the number.
+     * @throws Exception Throws an exception if the number is too large.
      */
-    ParseTree read() throws Exception {
-        leftMostDerivationArray.add(31);
-        ParseTree pt1 = match(LexicalUnit.READ);
-        ParseTree pt2 = match(LexicalUnit.LPAREN);
-        ParseTree pt3 = match(LexicalUnit.VARNAME);
-        variables.add(pt3.getLabel());
-        ParseTree pt4 = match(LexicalUnit.RPAREN);
-        return new ParseTree(new Symbol(LexicalUnit.READ_, "<Read>"), Arrays.asList(pt1, pt2, pt3, pt4));
+    private void checkNumber(Symbol number, String value) throws Exception {
+        try {
+            Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            int line = tokens.getLineIndex().getLine(number.getOffset()) + 1;
+            int column = tokens.getLineIndex().getColumn(number.getOffset());
+            throw new Exception("Number " + value + " at line: " + line + ", col: " + column
+                    + " is too large (the largest number is " + Long.MAX_VALUE + ")");
+        }
     }
 
-    boolean variableExist(String varName) {
-        for (int i = 0; i < variables.size(); i++) {
-            if (variables.get(i).getValue().equals(varName)) {
-                return true;
-            }
+    /**
+     * This method declares the variables assigned or read, and checks that the
+     * variables used in an expression or printed have been declared before.
+     * 
+     * @param rule    The rule in which the variable name has been matched.
+     * @param varName The token of the variable name, holding its id.
+     * @throws Exception Throws an exception if the variable is not declared.
+     */
+    private void checkVariable(int rule, Symbol varName) throws Exception {
+        switch (rule) {
+            case 9:
+            case 31:
+                symbols.declare(varName.getId());
+                break;
+            case 19:
+            case 30:
+                if (!symbols.isDeclared(varName.getId())) {
+                    if (undeclaredUses == null) {
+                        throw new Exception("Variable " + varName.getValue() + " is not declared");
+                    }
+                    undeclaredUses.add(varName);
+                    // the next uses depend on the same declarations
+                    symbols.declare(varName.getId());
+                }
+                break;
+            default:
         }
-        return false;
     }
 }
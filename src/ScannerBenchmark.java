@@ -0,0 +1,80 @@
+import java.io.StringReader;
+
+/**
+ * This class compares the throughput of the Lexer generated by JFlex with the
+ * throughput of the AsciiScanner. Both scanners read all the tokens of a
+ * generated source whose size in megabytes is given as argument (100 by
+ * default), several times, and the best run of each is printed in megabytes
+ * per second. With "comments" as second argument, most of the source is made
+ * of long and short comments instead of code.
+ */
+public class ScannerBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        boolean comments = args.length > 1 && args[1].equals("comments");
+        String source = comments ? generateComments(megabytes * 1000000) : generate(megabytes * 1000000);
+
+        // one run of each scanner to warm them up
+        scan(source, "jflex");
+        scan(source, "ascii");
+        for (String scanner : new String[] { "jflex", "ascii" }) {
+            long best = Long.MAX_VALUE;
+            int tokens = 0;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                tokens = scan(source, scanner);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(scanner + ": " + tokens + " tokens, " + best / 1000000 + " ms, "
+                    + source.length() * 1000L / best + " MB/s");
+        }
+    }
+
+    /**
+     * @return a program of about the given number of characters, made of
+     *         assignments, conditions and loops.
+     */
+    private static String generate(int length) {
+        StringBuilder source = new StringBuilder("BEGIN Benchmark\n  READ(a) ,\n  READ(b) ,\n");
+        for (int i = 0; source.length() < length; i++) {
+            source.append("  x").append(i % 100).append(" := (a + ").append(i).append(") * b - 7 / x")
+                    .append((i + 1) % 100).append(" ,\n");
+            if (i % 10 == 0) {
+                source.append("  IF (a > ").append(i).append(") THEN\n    a := a - 1 ,\n  ELSE\n")
+                        .append("    PRINT(b) ,\n  END ,\n  WHILE (b = 0) DO b := b + 1 , END ,\n");
+            }
+        }
+        return source.append("END\n").toString();
+    }
+
+    /**
+     * @return a program of about the given number of characters, in which each
+     *         instruction follows a few lines of comments.
+     */
+    private static String generateComments(int length) {
+        StringBuilder source = new StringBuilder("BEGIN Benchmark\n  READ(a) ,\n");
+        for (int i = 0; source.length() < length; i++) {
+            source.append("%%\r\n  The value of x").append(i % 100)
+                    .append(" depends on a, and is computed IF a > 0 THEN ELSE END ,\r\n")
+                    .append("  WHILE the loop below DO runs, a := a - 1 is not read.\r\n%%\r\n")
+                    .append("  :: a short comment := (a + b) * c\r\n")
+                    .append("  x").append(i % 100).append(" := a + ").append(i).append(" , :: the value\r\n");
+        }
+        return source.append("END\n").toString();
+    }
+
+    /**
+     * @return the number of tokens read by the scanner, EOS included.
+     */
+    private static int scan(String source, String scanner) throws Exception {
+        TokenSource lexer = scanner.equals("ascii") ? new AsciiScanner(new StringReader(source))
+                : new Lexer(new StringReader(source));
+        int tokens = 1;
+        while (lexer.yylex().getType() != LexicalUnit.EOS) {
+            tokens++;
+        }
+        return tokens;
+    }
+}
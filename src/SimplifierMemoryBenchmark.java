@@ -0,0 +1,52 @@
+import java.io.StringReader;
+import java.lang.ref.Reference;
+
+/**
+ * This class compares the memory kept by the TreeSimplifier when it copies the
+ * parse tree with the memory kept when it simplifies the tree in place. It
+ * parses a generated program whose number of instructions is given as argument
+ * (20000 by default), and prints the size of the parse tree and, for both
+ * modes, the memory still used once the tree has been simplified, measured on
+ * the heap after a garbage collection.
+ */
+public class SimplifierMemoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        StringBuilder source = new StringBuilder("BEGIN Benchmark\n  READ(y) ,\n  READ(z) ,\n");
+        for (int i = 0; i < 100; i++) {
+            source.append("  READ(x").append(i).append(") ,\n");
+        }
+        for (int i = 0; i < instructions; i++) {
+            source.append("  x").append(i % 100).append(" := (x").append((i + 1) % 100)
+                    .append(" + ").append(i).append(") * -y - z / 2 ,\n");
+        }
+        source.append("END");
+        String text = source.toString();
+        Parser parser = new Parser(new TokenStream(TokenBuffer.lex(new Lexer(new StringReader(text)), text)));
+        parser.parse();
+
+        for (boolean inPlace : new boolean[] { false, true }) {
+            long before = usedMemory();
+            ParseTree tree = parser.getParseTree();
+            long parseTree = usedMemory() - before;
+            // the simplifier keeps the only reference to the parse tree
+            TreeSimplifier simplifier = new TreeSimplifier(tree, inPlace);
+            tree = null;
+            simplifier.simplify();
+            long simplified = usedMemory() - before;
+
+            System.out.println((inPlace ? "in place: " : "copy:     ") + "parse tree " + parseTree / 1024
+                    + " KiB, live after simplify " + simplified / 1024 + " KiB");
+            Reference.reachabilityFence(simplifier);
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class gives a random access to the text of a pure ASCII source file,
+ * one byte per character, directly on a memory mapping of the file. The text
+ * is therefore not copied on the Java heap.
+ */
+public class SourceText implements CharSequence {
+    private ByteBuffer bytes;
+
+    private SourceText(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * This method maps the given file and returns its text. Pure ASCII files are
+     * returned as a SourceText; other files are decoded as UTF-8 into a String.
+     * Compressed files are decompressed into a String without being mapped.
+     *
+     * @param fileName the name of the file.
+     * @return the text of the file.
+     * @throws IOException if the file cannot be mapped or is bigger than 2 GB.
+     */
+    public static CharSequence map(String fileName) throws IOException {
+        if (CompressedSource.isCompressed(fileName)) {
+            return CompressedSource.read(fileName);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The file " + fileName + " is too big to be kept in memory.");
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int i = 0; i < bytes.limit(); i++) {
+                if (bytes.get(i) < 0) {
+                    return StandardCharsets.UTF_8.decode(bytes).toString();
+                }
+            }
+            return new SourceText(bytes);
+        }
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new SourceText(bytes.slice(start, end - start));
+    }
+
+    @Override
+    public String toString() {
+        byte[] text = new byte[bytes.limit()];
+        bytes.get(0, text);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class measures the time to the first token of a short-lived run, for
+ * both scanners, with the source opened through a MappedFileReader or through
+ * a FileReader. Each measure is taken in a new JVM, from the start of main()
+ * through the loading and initialization of the scanner class, which unpacks
+ * the tables of the Lexer, the opening of the source and the first call to
+ * yylex(). The source is given as argument (test/Factorial.fs by default), and
+ * the median of 15 runs is printed in microseconds.
+ */
+public class StartupBenchmark {
+    private static final int RUNS = 15;
+
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        if (args.length == 3) {
+            measure(start, args[0], args[1], args[2]);
+            return;
+        }
+        String source = args.length > 0 ? args[0] : "test/Factorial.fs";
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        for (String scanner : new String[] { "jflex", "ascii" }) {
+            for (String open : new String[] { "map", "read" }) {
+                List<Long> inits = new ArrayList<>();
+                List<Long> totals = new ArrayList<>();
+                for (int i = 0; i < RUNS; i++) {
+                    Process process = new ProcessBuilder(java, "-cp", classPath, "StartupBenchmark", source,
+                            scanner, open).redirectErrorStream(true).start();
+                    try (BufferedReader output = new BufferedReader(
+                            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                        String[] times = output.readLine().split(" ");
+                        inits.add(Long.parseLong(times[0]));
+                        totals.add(Long.parseLong(times[1]));
+                    }
+                    process.waitFor();
+                }
+                System.out.println(scanner + ", " + (open.equals("map") ? "mapped:     " : "FileReader: ")
+                        + "class initialization " + median(inits) + " us, first token " + median(totals) + " us");
+            }
+        }
+    }
+
+    /**
+     * This method prints the time taken to initialize the scanner class, and the
+     * time to the first token, both from the given start, in microseconds.
+     */
+    private static void measure(long start, String source, String scanner, String open) throws Exception {
+        Class.forName(scanner.equals("ascii") ? "AsciiScanner" : "Lexer");
+        long initialized = System.nanoTime();
+        Reader reader = open.equals("map") ? new MappedFileReader(source)
+                : new FileReader(source, StandardCharsets.UTF_8);
+        TokenSource lexer = scanner.equals("ascii") ? new AsciiScanner(reader) : new Lexer(reader);
+        lexer.yylex();
+        long first = System.nanoTime();
+        System.out.println((initialized - start) / 1000 + " " + (first - start) / 1000);
+    }
+
+    private static long median(List<Long> times) {
+        Collections.sort(times);
+        return times.get(times.size() / 2);
+    }
+}
@@ -1,32 +1,72 @@
+import java.util.Objects;
+
 public class Symbol {
 	public static final int UNDEFINED_POSITION = -1;
 	public static final Object NO_VALUE = null;
+	public static final int NO_ID = -1;
+
+	private static final Symbol[] LABELS = new Symbol[LexicalUnit.values().length];
 
 	private final LexicalUnit type;
 	private final Object value;
-	private final int line, column;
+	private final long offset;
+	private final int id;
 
-	public Symbol(LexicalUnit unit, int line, int column, Object value) {
+	/**
+	 * Constructor of the class. The line and column of a token are not kept: they
+	 * are computed from its offset by the LineIndex of the source when needed.
+	 * 
+	 * @param unit   the lexical unit of the symbol.
+	 * @param offset the offset of the first character of the token in the source.
+	 * @param value  the value of the symbol.
+	 * @param id     the id given by the lexer to a variable name.
+	 */
+	public Symbol(LexicalUnit unit, long offset, Object value, int id) {
 		this.type = unit;
-		this.line = line + 1;
-		this.column = column;
+		this.offset = offset;
 		this.value = value;
+		this.id = id;
 	}
 
-	public Symbol(LexicalUnit unit, int line, int column) {
-		this(unit, line, column, NO_VALUE);
-	}
-
-	public Symbol(LexicalUnit unit, int line) {
-		this(unit, line, UNDEFINED_POSITION, NO_VALUE);
+	public Symbol(LexicalUnit unit, long offset, Object value) {
+		this(unit, offset, value, NO_ID);
 	}
 
 	public Symbol(LexicalUnit unit) {
-		this(unit, UNDEFINED_POSITION, UNDEFINED_POSITION, NO_VALUE);
+		this(unit, UNDEFINED_POSITION, NO_VALUE);
 	}
 
 	public Symbol(LexicalUnit unit, Object value) {
-		this(unit, UNDEFINED_POSITION, UNDEFINED_POSITION, value);
+		this(unit, UNDEFINED_POSITION, value);
+	}
+
+	/**
+	 * This method returns a symbol without position, to label a node of a tree.
+	 * The variables of the grammar, epsilon, the keywords and the punctuation
+	 * always have the same value, so a single instance of each label is shared by
+	 * all the nodes. Only the variable names, the numbers and the name of the
+	 * program get a new symbol.
+	 * 
+	 * @param unit  the lexical unit of the symbol.
+	 * @param value the value of the symbol.
+	 * @return a symbol with this unit and this value.
+	 */
+	public static Symbol label(LexicalUnit unit, Object value) {
+		switch (unit) {
+			case VARNAME:
+			case NUMBER:
+			case PROGNAME:
+				return new Symbol(unit, value);
+			default:
+		}
+		Symbol label = LABELS[unit.ordinal()];
+		if (label == null || !Objects.equals(label.value, value)) {
+			label = new Symbol(unit, value);
+			// Two threads may create the same label, but the fields of a symbol are
+			// final, so the one kept is seen complete by all the threads.
+			LABELS[unit.ordinal()] = label;
+		}
+		return label;
 	}
 
 	public boolean isTerminal() {
@@ -45,19 +85,42 @@ public class Symbol {
 		return this.value;
 	}
 
-	public int getLine() {
-		return this.line;
+	/**
+	 * @return the offset of the token in the source, or UNDEFINED_POSITION.
+	 */
+	public long getOffset() {
+		return this.offset;
 	}
 
-	public int getColumn() {
-		return this.column;
+	/**
+	 * This method returns the id given by the lexer to a variable name.
+	 * 
+	 * @return the id of the variable, or NO_ID if the symbol is not a variable.
+	 */
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Two symbols are equal if they have the same lexical unit and the same value,
+	 * wherever their tokens are in the source.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof Symbol)) {
+			return false;
+		}
+		Symbol symbol = (Symbol) other;
+		return this.type == symbol.type && Objects.equals(this.value, symbol.value);
 	}
 
 	@Override
 	public int hashCode() {
-		final String value = this.value != null ? this.value.toString() : "null";
-		final String type = this.type != null ? this.type.toString() : "null";
-		return new String(value + "_" + type).hashCode();
+		final int type = this.type != null ? this.type.ordinal() + 1 : 0;
+		return 31 * type + Objects.hashCode(this.value);
 	}
 
 	@Override
@@ -0,0 +1,74 @@
+import java.util.BitSet;
+
+/**
+ * This class holds the variables of a program for the stages following the
+ * lexer. A variable is known by the dense id (0, 1, 2, ...) given to its name
+ * by the IdentifierTable of the lexer, so the parser and the LLVMGenerator
+ * index arrays and bit sets by id instead of comparing strings. The table
+ * also records which variables have been declared, by an assignment or a
+ * READ, so that a use can be checked in constant time.
+ */
+public class SymbolTable {
+    private IdentifierTable identifiers;
+    private BitSet declared;
+
+    /**
+     * Constructor of the class.
+     *
+     * @param identifiers the table in which the lexer interns the variable names.
+     */
+    public SymbolTable(IdentifierTable identifiers) {
+        this.identifiers = identifiers;
+        this.declared = new BitSet();
+    }
+
+    /**
+     * @return the number of variables, which is one more than the largest id.
+     */
+    public int size() {
+        return identifiers.size();
+    }
+
+    /**
+     * @param name the name of a variable.
+     * @return the id of the variable, or Symbol.NO_ID if the name does not appear
+     *         in the program.
+     */
+    public int getId(String name) {
+        return identifiers.getId(name);
+    }
+
+    /**
+     * @param id the id of a variable.
+     * @return the name of the variable.
+     */
+    public String getName(int id) {
+        return identifiers.getName(id);
+    }
+
+    /**
+     * This method marks a variable as declared.
+     *
+     * @param id the id of the variable.
+     */
+    public void declare(int id) {
+        declared.set(id);
+    }
+
+    /**
+     * This method marks as declared the variables declared in another table.
+     *
+     * @param other a table of the same variables.
+     */
+    public void declareAll(SymbolTable other) {
+        declared.or(other.declared);
+    }
+
+    /**
+     * @param id the id of a variable.
+     * @return true if the variable has been declared before.
+     */
+    public boolean isDeclared(int id) {
+        return declared.get(id);
+    }
+}
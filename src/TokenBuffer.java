@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class stores a whole sequence of tokens in a compact way. Instead of one
+ * Symbol object per token, the lexical unit, the start offset and the length of
+ * the tokens are kept in parallel arrays of primitives. The line and column are
+ * computed from the offset by the LineIndex of the source, and the text of a
+ * token is not copied: it is read back from the source text when it is asked for.
+ */
+public class TokenBuffer {
+    private static final LexicalUnit[] UNITS = LexicalUnit.values();
+
+    private CharSequence source;
+    private IdentifierTable identifiers;
+    private LineIndex lines;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int size;
+
+    /**
+     * Constructor of the class. It creates an empty buffer.
+     *
+     * @param source      the text the tokens come from.
+     * @param identifiers the table giving the ids of the variable names.
+     * @param lines       the index of the lines of the source.
+     */
+    public TokenBuffer(CharSequence source, IdentifierTable identifiers, LineIndex lines) {
+        this.source = source;
+        this.identifiers = identifiers;
+        this.lines = lines;
+        this.types = new byte[1024];
+        this.starts = new int[1024];
+        this.lengths = new int[1024];
+        this.size = 0;
+    }
+
+    /**
+     * This method reads all the tokens of the lexer, until EOS included, into a
+     * new buffer.
+     *
+     * @param lexer  the scanner reading the source.
+     * @param source the text read by the lexer.
+     * @return the buffer holding all the tokens.
+     * @throws IOException if the lexer cannot read its input.
+     */
+    public static TokenBuffer lex(TokenSource lexer, CharSequence source) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(source, lexer.getIdentifiers(), lexer.getLineIndex());
+        Symbol token;
+        do {
+            token = lexer.yylex();
+            buffer.add(token.getType(), (int) lexer.getOffset(), lexer.yylength());
+        } while (token.getType() != LexicalUnit.EOS);
+        buffer.trimToSize();
+        return buffer;
+    }
+
+    /**
+     * This method adds a token at the end of the buffer.
+     *
+     * @param type   the lexical unit of the token.
+     * @param start  the offset of the first character of the token in the source.
+     * @param length the number of characters of the token.
+     */
+    public void add(LexicalUnit type, int start, int length) {
+        if (size == types.length) {
+            resize(size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /**
+     * This method adds the first tokens of another buffer at the end of this one.
+     *
+     * @param other the buffer holding the tokens to add.
+     * @param count the number of tokens to add.
+     */
+    public void append(TokenBuffer other, int count) {
+        if (size + count > types.length) {
+            resize(Math.max(size + count, size * 2));
+        }
+        System.arraycopy(other.types, 0, types, size, count);
+        System.arraycopy(other.starts, 0, starts, size, count);
+        System.arraycopy(other.lengths, 0, lengths, size, count);
+        size += count;
+    }
+
+    /**
+     * This method replaces a range of tokens by the tokens of another buffer,
+     * after an edit of the source. The tokens following the range are moved by
+     * the number of characters inserted (or removed if negative) by the edit.
+     *
+     * @param from  the index of the first token to replace.
+     * @param to    the index following the last token to replace.
+     * @param other the buffer holding the new tokens.
+     * @param shift the number of characters added to the offsets of the tokens
+     *              following the range.
+     */
+    public void splice(int from, int to, TokenBuffer other, int shift) {
+        int count = other.size;
+        int newSize = size - (to - from) + count;
+        if (newSize > types.length) {
+            resize(Math.max(newSize, size * 2));
+        }
+        int tail = size - to;
+        System.arraycopy(types, to, types, from + count, tail);
+        System.arraycopy(starts, to, starts, from + count, tail);
+        System.arraycopy(lengths, to, lengths, from + count, tail);
+        System.arraycopy(other.types, 0, types, from, count);
+        System.arraycopy(other.starts, 0, starts, from, count);
+        System.arraycopy(other.lengths, 0, lengths, from, count);
+        size = newSize;
+        for (int i = from + count; i < size; i++) {
+            starts[i] += shift;
+        }
+    }
+
+    /**
+     * This method shrinks the arrays to the number of tokens in the buffer.
+     */
+    public void trimToSize() {
+        if (size < types.length) {
+            resize(size);
+        }
+    }
+
+    private void resize(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LexicalUnit getType(int i) {
+        return UNITS[types[i]];
+    }
+
+    public int getStart(int i) {
+        return starts[i];
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+
+    /**
+     * @param lines the index of the lines of the source, after it has been edited.
+     */
+    public void setLineIndex(LineIndex lines) {
+        this.lines = lines;
+    }
+
+    public IdentifierTable getIdentifiers() {
+        return identifiers;
+    }
+
+    public int getLine(int i) {
+        return lines.getLine(starts[i]);
+    }
+
+    public int getColumn(int i) {
+        return lines.getColumn(starts[i]);
+    }
+
+    /**
+     * @param i the index of a token.
+     * @return the text of the token, read from the source.
+     */
+    public String getText(int i) {
+        return source.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    /**
+     * This method builds the Symbol of a token, as the lexer would have returned it.
+     *
+     * @param i the index of a token.
+     * @return the symbol of the token.
+     */
+    public Symbol getSymbol(int i) {
+        LexicalUnit type = getType(i);
+        if (type == LexicalUnit.EOS) {
+            return new Symbol(type, starts[i], "EOS");
+        }
+        if (type == LexicalUnit.VARNAME) {
+            int id = identifiers.intern(getText(i), starts[i]);
+            return new Symbol(type, starts[i], identifiers.getName(id), id);
+        }
+        return new Symbol(type, starts[i], getText(i));
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.File;
+import java.io.StringReader;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class compares the memory taken by the tokens of a source kept as a list
+ * of Symbol objects with the memory taken by the same tokens in a TokenBuffer.
+ * The source is made of the programs of a directory (test by default)
+ * concatenated a number of times (3000 by default), both given as arguments.
+ * It prints the number of bytes per token of both representations, measured on
+ * the heap after a garbage collection, the source itself not included.
+ */
+public class TokenMemoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : "test");
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".fs"));
+        Arrays.sort(files);
+        StringBuilder programs = new StringBuilder();
+        for (File file : files) {
+            programs.append(Files.readString(file.toPath())).append('\n');
+        }
+        String source = programs.toString().repeat(copies);
+
+        long before = usedMemory();
+        ArrayList<Symbol> symbols = new ArrayList<>();
+        Lexer lexer = new Lexer(new StringReader(source));
+        Symbol symbol;
+        do {
+            symbol = lexer.yylex();
+            symbols.add(symbol);
+        } while (symbol.getType() != LexicalUnit.EOS);
+        lexer = null;
+        long list = usedMemory() - before;
+        int tokens = symbols.size();
+        symbols = null;
+
+        before = usedMemory();
+        TokenBuffer buffer = TokenBuffer.lex(new Lexer(new StringReader(source)), source);
+        long compact = usedMemory() - before;
+
+        System.out.println("tokens: " + tokens);
+        System.out.println("ArrayList<Symbol>: " + list / tokens + " bytes per token");
+        System.out.println("TokenBuffer:       " + compact / tokens + " bytes per token");
+        Reference.reachabilityFence(buffer);
+        Reference.reachabilityFence(source);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,41 @@
+import java.io.IOException;
+
+/**
+ * This interface is implemented by the scanners producing the tokens of a
+ * FORTRESS source: the Lexer generated by JFlex and the hand-written AsciiScanner.
+ */
+public interface TokenSource {
+    /**
+     * This method scans the next token. Once the end of the input has been
+     * reached, it keeps returning the EOS token.
+     *
+     * @return the next token.
+     * @throws IOException if the input cannot be read.
+     */
+    Symbol yylex() throws IOException;
+
+    /**
+     * @return the offset in the input of the first character of the last token.
+     */
+    long getOffset();
+
+    /**
+     * @return the number of characters of the last token.
+     */
+    int yylength();
+
+    /**
+     * @return the table of the variable names met so far.
+     */
+    IdentifierTable getIdentifiers();
+
+    /**
+     * @return the index giving the line and column of the offsets of the tokens.
+     */
+    LineIndex getLineIndex();
+
+    /**
+     * @param lines the index of the lines of the source read by the scanner.
+     */
+    void setLineIndex(LineIndex lines);
+}
@@ -0,0 +1,105 @@
+import java.io.IOException;
+
+/**
+ * This class gives the parser a pull-based access to the tokens. The tokens come
+ * either directly from the lexer, one at a time and only when the parser needs
+ * them, or from a TokenBuffer already holding all the tokens of the input.
+ * In both cases, at most one token of lookahead is turned into a Symbol.
+ */
+public class TokenStream {
+    private TokenSource lexer;
+    private TokenBuffer buffer;
+    private int cursor;
+    private Symbol lookahead;
+
+    /**
+     * Constructor of the class for tokens read on demand from the lexer.
+     *
+     * @param lexer the scanner producing the tokens.
+     */
+    public TokenStream(TokenSource lexer) {
+        this.lexer = lexer;
+        this.buffer = null;
+        this.lookahead = null;
+    }
+
+    /**
+     * Constructor of the class for tokens already stored in a buffer.
+     *
+     * @param buffer the buffer holding the tokens, ending with EOS.
+     */
+    public TokenStream(TokenBuffer buffer) {
+        this(buffer, 0);
+    }
+
+    /**
+     * Constructor of the class for tokens stored in a buffer, starting from one
+     * of them.
+     *
+     * @param buffer the buffer holding the tokens, ending with EOS.
+     * @param from   the index of the first token to return.
+     */
+    public TokenStream(TokenBuffer buffer, int from) {
+        this.lexer = null;
+        this.buffer = buffer;
+        this.cursor = from;
+        this.lookahead = null;
+    }
+
+    /**
+     * @return the buffer holding the tokens, or null if they are read from the lexer.
+     */
+    public TokenBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the index in the buffer of the next token to return.
+     */
+    public int getPosition() {
+        return cursor;
+    }
+
+    /**
+     * This method returns the next token without consuming it.
+     * Once the end of the input has been reached, the EOS token is returned.
+     *
+     * @return the next token.
+     * @throws IOException if the lexer cannot read its input.
+     */
+    public Symbol peek() throws IOException {
+        if (lookahead == null) {
+            lookahead = buffer != null ? buffer.getSymbol(cursor) : lexer.yylex();
+        }
+        return lookahead;
+    }
+
+    /**
+     * @return the index giving the line and column of the offsets of the tokens.
+     */
+    public LineIndex getLineIndex() {
+        return buffer != null ? buffer.getLineIndex() : lexer.getLineIndex();
+    }
+
+    /**
+     * @return the table giving the ids of the variable names of the tokens.
+     */
+    public IdentifierTable getIdentifiers() {
+        return buffer != null ? buffer.getIdentifiers() : lexer.getIdentifiers();
+    }
+
+    /**
+     * This method returns the next token and consumes it.
+     *
+     * @return the next token.
+     * @throws IOException if the lexer cannot read its input.
+     */
+    public Symbol next() throws IOException {
+        Symbol token = peek();
+        lookahead = null;
+        if (buffer != null && cursor < buffer.size() - 1) {
+            cursor++;
+        }
+        return token;
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.StringReader;
+import java.lang.ref.Reference;
+
+/**
+ * This class compares the memory taken by a simplified tree stored in a
+ * FlatTree with the memory taken by the same tree made of ParseTree nodes.
+ * It parses a generated program whose number of instructions is given as
+ * argument (100000 by default) and prints the number of bytes per node of
+ * both representations, measured on the heap after a garbage collection.
+ */
+public class TreeMemoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        StringBuilder source = new StringBuilder("BEGIN Benchmark\n  READ(y) ,\n  READ(z) ,\n");
+        for (int i = 0; i < 100; i++) {
+            source.append("  READ(x").append(i).append(") ,\n");
+        }
+        for (int i = 0; i < instructions; i++) {
+            source.append("  x").append(i % 100).append(" := (x").append((i + 1) % 100)
+                    .append(" + ").append(i).append(") * -y - z / 2 ,\n");
+        }
+        source.append("END");
+
+        long before = usedMemory();
+        Parser parser = new Parser(new TokenStream(new Lexer(new StringReader(source.toString()))));
+        parser.parseSimplified();
+        FlatTree flatTree = parser.getSimplifiedTree();
+        int root = parser.getSimplifiedRoot();
+        parser = null;
+        long flat = usedMemory() - before;
+
+        before = usedMemory();
+        ParseTree parseTree = flatTree.toParseTree(root);
+        long objects = usedMemory() - before;
+
+        int nodes = flatTree.size();
+        System.out.println("nodes: " + nodes);
+        System.out.println("FlatTree:  " + flat / nodes + " bytes per node");
+        System.out.println("ParseTree: " + objects / nodes + " bytes per node");
+        Reference.reachabilityFence(parseTree);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,13 +1,35 @@
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This class contains the methods to simplify the parse tree created by the parser.
  * It is used to remove the useless nodes.
+ * The tree is walked with an explicit stack instead of recursive calls, so that
+ * deeply nested or very long expressions do not overflow the Java stack. Each
+ * node is visited twice: the first time, expand() puts on the stack the
+ * children to simplify, and the second time, once their simplified trees are
+ * on the stack of results, combine() replaces them by the simplified node.
+ * In place, the simplifier rewrites the old tree instead of copying it: the
+ * nodes which are kept get their simplified children with setChildren, and the
+ * other ones are unlinked from the tree as they are visited, so that they can
+ * be freed before the end. The old tree cannot be used afterwards.
  */
 public class TreeSimplifier {
     ParseTree oldTree;
     ParseTree newTree;
+    private boolean inPlace;
+
+    // The stack of the nodes to visit, with the number of results a node takes
+    // when it is visited the second time, or EXPAND the first time
+    private static final int EXPAND = -1;
+    private ParseTree[] work;
+    private int[] workCounts;
+    private int workSize;
+    // The stack of the simplified trees
+    private ParseTree[] results;
+    private int resultCount;
 
     /**
      * Constructor of the class.
@@ -15,8 +37,18 @@ public class TreeSimplifier {
      * @param oldTree the old parse tree
      */
     public TreeSimplifier(ParseTree oldTree) {
+        this(oldTree, false);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param oldTree the old parse tree
+     * @param inPlace true to rewrite the old tree instead of copying it
+     */
+    public TreeSimplifier(ParseTree oldTree, boolean inPlace) {
         this.oldTree = oldTree;
-        this.newTree = new ParseTree(new Symbol(LexicalUnit.PROGRAM_, "<Program>"));
+        this.newTree = new ParseTree(Symbol.label(LexicalUnit.PROGRAM_, "<Program>"));
+        this.inPlace = inPlace;
     }
 
     /**
@@ -28,296 +60,268 @@ public class TreeSimplifier {
     }
 
     /**
-     * This method calls the program method to simplify the parse tree recursively.
+     * This method simplifies the parse tree from the program node.
      */
     public void simplify() {
-        newTree = program(oldTree);
-    }
-
-    /**
-     * This method simplifies the parse tree recursively from the program node.
-     * Calls the corresponding method for the children of the current node.
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree program(ParseTree t) {
-        ParseTree pt1 = t.getChild(0);
-        ParseTree pt2 = t.getChild(1);
-        ParseTree pt3 = code(t.getChild(2));
-        ParseTree pt4 = t.getChild(3);
-        return new ParseTree(new Symbol(LexicalUnit.PROGRAM_, "<Program>"),
-                Arrays.asList(pt1, pt2, pt3, pt4));
-
-    }
-
-    /**
-     * This method simplifies the parse tree recursively from the code node.
-     * Calls the corresponding method for the children of the current node.
-     * This one is a bit more complicated because it has to handle the epsilon case.
-     * It puts the instructions in a list and then creates a new node with the list as children.
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree code(ParseTree t) {
-
-        if (t.getChild(0).getLabel().getType().equals(LexicalUnit.EPSILON)) {
-            return new ParseTree(new Symbol(LexicalUnit.CODE_, "<Code>"));
-        } else {
-
-            ArrayList<ParseTree> list = new ArrayList<>();
-            ParseTree pt1 = instruction(t.getChild(0));
-            list.add(pt1);
-
-            while (t.getChild(2).getChildren().size() > 1) {
-                t = t.getChild(2);
-
-                ParseTree codeFollow = instruction(t.getChild(0));
-                list.add(codeFollow);
+        work = new ParseTree[64];
+        workCounts = new int[64];
+        workSize = 0;
+        results = new ParseTree[64];
+        resultCount = 0;
+
+        push(oldTree, EXPAND);
+        if (inPlace) {
+            // the root becomes the one of the new tree
+            oldTree = null;
+        }
+        while (workSize > 0) {
+            workSize--;
+            ParseTree t = work[workSize];
+            int count = workCounts[workSize];
+            work[workSize] = null;
+            if (count == EXPAND) {
+                expand(t);
+            } else {
+                resultCount -= count;
+                ParseTree pt = combine(t, resultCount, count);
+                Arrays.fill(results, resultCount, resultCount + count, null);
+                result(pt);
             }
-            return new ParseTree(new Symbol(LexicalUnit.CODE_, "<Code>"), list);
         }
+        newTree = results[0];
+        work = null;
+        workCounts = null;
+        results = null;
     }
 
     /**
-     * This method simplifies the parse tree recursively from the instruction node.
-     * Calls the corresponding method for the children of the current node.
-     * We return directly the child of the current node because this node is useless.
+     * This method visits a node for the first time. The nodes which are only
+     * kept or replaced by one of their children are handled at once. The others
+     * are pushed again, above the children to simplify, so that their simplified
+     * trees are on the stack of results, in order, when the node is combined.
+     * The node of an operation is the one of its operator.
+     * In place, the nodes which are dropped are unlinked from their children as
+     * soon as these are on the stack.
      * @param t the current node
-     * @return the simplified node
      */
-    ParseTree instruction(ParseTree t) {
-
-        ParseTree pt = t.getChild(0);
-        switch (pt.getLabel().getType()) {
+    private void expand(ParseTree t) {
+        switch (t.getLabel().getType()) {
+            case PROGRAM_:
+                push(t, 1);
+                push(t.getChild(2), EXPAND);
+                break;
+            case CODE_:
+                // the instructions are in a list, the epsilon case gives no child
+                if (t.getChild(0).getLabel().getType().equals(LexicalUnit.EPSILON)) {
+                    result(node(t, Symbol.label(LexicalUnit.CODE_, "<Code>"), Collections.emptyList()));
+                    break;
+                }
+                ArrayList<ParseTree> list = new ArrayList<>();
+                list.add(t.getChild(0));
+                ParseTree code = t;
+                while (code.getChild(2).getChildren().size() > 1) {
+                    ParseTree next = code.getChild(2);
+                    if (code != t) {
+                        unlink(code);
+                    }
+                    code = next;
+                    list.add(code.getChild(0));
+                }
+                if (code != t) {
+                    unlink(code);
+                }
+                push(t, list.size());
+                for (int i = list.size() - 1; i >= 0; i--) {
+                    push(list.get(i), EXPAND);
+                }
+                break;
+            case INSTRUCTION_:
+                // this node is useless, its child replaces it
+                push(t.getChild(0), EXPAND);
+                unlink(t);
+                break;
             case ASSIGN_:
-                pt = assign(pt);
+                // ":=" is removed
+                push(t, 1);
+                push(t.getChild(2), EXPAND);
+                break;
+            case EXPRARITH_:
+            case MULDIV_:
+                // the operands are the first child and the second child of each
+                // <X'> node of the chain in the second child
+                ParseTree rest = t.getChild(1);
+                if (rest.getChildren().size() == 1) {
+                    push(t.getChild(0), EXPAND);
+                    unlink(t);
+                    break;
+                }
+                ArrayList<ParseTree> operands = new ArrayList<>();
+                operands.add(t.getChild(0));
+                while (rest.getChildren().size() > 1) {
+                    operands.add(rest.getChild(1));
+                    rest = rest.getChild(2);
+                }
+                push(t, operands.size());
+                for (int i = operands.size() - 1; i >= 0; i--) {
+                    push(operands.get(i), EXPAND);
+                }
+                break;
+            case ATOM_:
+                if (t.getChildren().size() == 1) {
+                    result(t.getChild(0));
+                    break;
+                } else if (t.getChildren().size() == 2) {
+                    // a minus operator with the second child
+                    push(t.getChild(0), 1);
+                    push(t.getChild(1), EXPAND);
+                } else {
+                    // the parenthesis are removed
+                    push(t.getChild(1), EXPAND);
+                }
+                unlink(t);
                 break;
             case IF_:
-                pt = if_(pt);
+                // the condition, the then code and the else code, if there is one
+                ParseTree ifSeq = t.getChild(6);
+                if (ifSeq.getChildren().size() == 1) {
+                    push(t, 2);
+                } else {
+                    push(t, 3);
+                    push(ifSeq.getChild(1), EXPAND);
+                }
+                push(t.getChild(5), EXPAND);
+                push(t.getChild(2), EXPAND);
+                unlink(t);
+                break;
+            case COND_:
+                // the operator is put between the two expressions
+                push(t.getChild(1).getChild(0), 2);
+                push(t.getChild(2), EXPAND);
+                push(t.getChild(0), EXPAND);
+                unlink(t);
                 break;
             case WHILE_:
-                pt = while_(pt);
+                push(t, 2);
+                push(t.getChild(5), EXPAND);
+                push(t.getChild(2), EXPAND);
+                unlink(t);
                 break;
             case PRINT_:
-                pt = print(pt);
+                // the parenthesis and the useless stuff are removed
+                result(node(t, Symbol.label(LexicalUnit.PRINT_, "<Print>"), Arrays.asList(t.getChild(2))));
                 break;
             case READ_:
-                pt = read(pt);
+                result(node(t, Symbol.label(LexicalUnit.READ_, "<Read>"), Arrays.asList(t.getChild(2))));
                 break;
             default:
+                result(t);
         }
-        return pt;
-    }
-
-    /**
-     * This method simplifies the parse tree recursively from the assign node.
-     * Calls the corresponding method for the children of the current node.
-     * We remove ":=".
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree assign(ParseTree t) {
-        ParseTree pt1 = t.getChild(0);
-        ParseTree pt2 = exprArith(t.getChild(2));
-        return new ParseTree(new Symbol(LexicalUnit.ASSIGN_, "<Assign>"), Arrays.asList(pt1, pt2));
     }
 
     /**
-     * This method simplifies the parse tree recursively from the exprArith node.
-     * Calls the corresponding method for the children of the current node.
-     * We search the operator in the second child of the current node,
-     * and put it between the two children of the current node.
-     * If there is no operator, we call the muldiv method.
-     * @param t the current node
+     * This method visits a node for the second time, and builds its simplified
+     * node from the simplified trees of its children.
+     * @param t     the current node, or the operator of an operation
+     * @param first the position of the first simplified child on the stack of results
+     * @param count the number of simplified children
      * @return the simplified node
      */
-    ParseTree exprArith(ParseTree t) {
-
-        ParseTree exprArithQuoteRight = t.getChild(1);
-
-        if (exprArithQuoteRight.getChildren().size() == 1) {
-            // case only things in muldiv, thus we return muldiv
-            return mulDiv(t.getChild(0));
-        } else {
-            ParseTree pt1 = mulDiv(t.getChild(0));
-            ParseTree op = t.getChild(1).getChild(0);
-            ParseTree pt2 = exprArithQuote(t.getChild(1));
-            return new ParseTree(new Symbol(op.getLabel().getType(), op.getLabel().getValue()),
-                    Arrays.asList(pt1, pt2));
+    private ParseTree combine(ParseTree t, int first, int count) {
+        ParseTree[] r = results;
+        switch (t.getLabel().getType()) {
+            case PROGRAM_:
+                return node(t, Symbol.label(LexicalUnit.PROGRAM_, "<Program>"),
+                        Arrays.asList(t.getChild(0), t.getChild(1), r[first], t.getChild(3)));
+            case CODE_:
+                return node(t, Symbol.label(LexicalUnit.CODE_, "<Code>"),
+                        new ArrayList<>(Arrays.asList(r).subList(first, first + count)));
+            case ASSIGN_:
+                return node(t, Symbol.label(LexicalUnit.ASSIGN_, "<Assign>"), Arrays.asList(t.getChild(0), r[first]));
+            case IF_:
+                if (count == 2) {
+                    return node(t, Symbol.label(LexicalUnit.IF_, "<If>"), Arrays.asList(r[first], r[first + 1]));
+                }
+                return node(t, Symbol.label(LexicalUnit.IF_, "<If>"),
+                        Arrays.asList(r[first], r[first + 1], r[first + 2]));
+            case WHILE_:
+                return node(t, Symbol.label(LexicalUnit.WHILE_, "<While>"), Arrays.asList(r[first], r[first + 1]));
+            case EXPRARITH_:
+            case MULDIV_:
+                return operations(t, first, count);
+            default:
+                // an operator gets its operands
+                return node(t, t.getLabel(), Arrays.asList(Arrays.copyOfRange(r, first, first + count)));
         }
     }
 
     /**
-     * This method simplifies the parse tree recursively from the exprArithQuote node.
-     * Calls the corresponding method for the children of the current node.
-     * We search the operator in the second child of the current node,
-     * and put it between the two children of the current node.
-     * If there is no operator, we call the muldiv method.
-     * @param t the current node
+     * This method builds the operations of an arithmetic expression, from left to
+     * right, the node of each operation being the one of its operator. A run of +
+     * or of * is a single node with all the operands of the run as children, a -
+     * or a / has two children.
+     * @param t     the <ExprArith> or <MulDiv> node
+     * @param first the position of the first simplified operand on the stack of results
+     * @param count the number of operands
      * @return the simplified node
      */
-    ParseTree exprArithQuote(ParseTree t) {
-
-        ParseTree exprArithQuoteRight = t.getChild(2);
-
-        if (exprArithQuoteRight.getChildren().size() == 1) {
-            // case only things in muldiv, thus we return muldiv
-            return mulDiv(t.getChild(1));
-        } else {
-            ParseTree pt1 = mulDiv(t.getChild(1));
-            ParseTree op = t.getChild(2).getChild(0);
-            ParseTree pt2 = exprArithQuote(t.getChild(2));
-            return new ParseTree(new Symbol(op.getLabel().getType(), op.getLabel().getValue()),
-                    Arrays.asList(pt1, pt2));
+    private ParseTree operations(ParseTree t, int first, int count) {
+        ParseTree result = results[first];
+        ParseTree rest = t.getChild(1);
+        int i = first + 1;
+        while (i < first + count) {
+            ParseTree op = rest.getChild(0);
+            LexicalUnit kind = op.getLabel().getType();
+            ArrayList<ParseTree> children = new ArrayList<>();
+            children.add(result);
+            do {
+                children.add(results[i++]);
+                rest = rest.getChild(2);
+            } while (Parser.isAssociative(kind) && i < first + count
+                    && rest.getChild(0).getLabel().getType() == kind);
+            result = node(op, op.getLabel(), children);
         }
+        unlink(t);
+        return result;
     }
 
     /**
-     * This method simplifies the parse tree recursively from the mulDiv node.
-     * Calls the corresponding method for the children of the current node.
-     * We search the operator in the second child of the current node,
-     * and put it between the two children of the current node.
-     * If there is no operator, we call the atom method.
-     * @param t the current node
-     * @return the simplified node
+     * @param t        the node of the old tree becoming the simplified node.
+     * @param label    the label of the simplified node.
+     * @param children the children of the simplified node.
+     * @return t with the new children in place, or a new node.
      */
-    ParseTree mulDiv(ParseTree t) {
-        ParseTree mulDivQuoteRight = t.getChild(1);
-
-        if (mulDivQuoteRight.getChildren().size() == 1) {
-            // case only things in Atom, thus we return Atom
-            return atom(t.getChild(0));
-        } else {
-            ParseTree pt1 = atom(t.getChild(0));
-            ParseTree op = t.getChild(1).getChild(0);
-            ParseTree pt2 = mulDivQuote(t.getChild(1));
-            return new ParseTree(new Symbol(op.getLabel().getType(), op.getLabel().getValue()),
-                    Arrays.asList(pt1, pt2));
+    private ParseTree node(ParseTree t, Symbol label, List<ParseTree> children) {
+        if (inPlace) {
+            t.setChildren(children);
+            return t;
         }
+        return new ParseTree(label, children);
     }
 
     /**
-     * This method simplifies the parse tree recursively from the mulDivQuote node.
-     * Calls the corresponding method for the children of the current node.
-     * We search the operator in the second child of the current node,
-     * and put it between the two children of the current node.
-     * If there is no operator, we call the atom method.
-     * @param t the current node
-     * @return the simplified node
+     * This method drops the children of a node of the old tree which has no
+     * simplified node, when simplifying in place.
      */
-    ParseTree mulDivQuote(ParseTree t) {
-
-        ParseTree exprArithQuoteRight = t.getChild(2);
-
-        if (exprArithQuoteRight.getChildren().size() == 1) {
-            // case only things in atom, thus we return Atom
-            return atom(t.getChild(1));
-        } else {
-            ParseTree pt1 = atom(t.getChild(1));
-            ParseTree op = t.getChild(2).getChild(0);
-            ParseTree pt2 = mulDivQuote(t.getChild(2));
-            return new ParseTree(new Symbol(op.getLabel().getType(), op.getLabel().getValue()),
-                    Arrays.asList(pt1, pt2));
+    private void unlink(ParseTree t) {
+        if (inPlace) {
+            t.setChildren(Collections.emptyList());
         }
     }
 
-    /**
-     * This method simplifies the parse tree recursively from the atom node.
-     * Calls the corresponding method for the children of the current node.
-     * If there is only one child, we return it.
-     * If there are two children, we return the second child with a minus operator.
-     * If there are three children, we simplify by removing the parenthesis and
-     * call the exprArith method in between.
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree atom(ParseTree t) {
-        if (t.getChildren().size() == 1) {
-            return t.getChild(0);
-        } else if (t.getChildren().size() == 2) {
-            ParseTree pt = atom(t.getChild(1));
-            return new ParseTree(new Symbol(LexicalUnit.MINUS, "-"), Arrays.asList(pt));
-        } else {
-            return exprArith(t.getChild(1));
+    private void push(ParseTree t, int count) {
+        if (workSize == work.length) {
+            work = Arrays.copyOf(work, workSize * 2);
+            workCounts = Arrays.copyOf(workCounts, workSize * 2);
         }
+        work[workSize] = t;
+        workCounts[workSize] = count;
+        workSize++;
     }
 
-    /**
-     * This method simplifies the parse tree recursively from the if node.
-     * Calls the corresponding method for the children of the current node.
-     * If there is only one child in the ifSeq node, we put the condition in the
-     * first child, the code in the second child and return the node.
-     * If there are two children in the ifSeq node, we put the condition in the
-     * first child, the then code in the second child, the else code in the third child
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree if_(ParseTree t) {
-        ParseTree ifSeq = t.getChild(6);
-        if(ifSeq.getChildren().size() == 1){
-            ParseTree cond = cond(t.getChild(2));
-            ParseTree then = code(t.getChild(5));
-            return new ParseTree(new Symbol(LexicalUnit.IF_, "<If>"), Arrays.asList(cond, then));
-        }else{
-            ParseTree cond = cond(t.getChild(2));
-            ParseTree then = code(t.getChild(5));
-            ParseTree else_ = code(ifSeq.getChild(1));
-            return new ParseTree(new Symbol(LexicalUnit.IF_, "<If>"), Arrays.asList(cond, then, else_));
+    private void result(ParseTree t) {
+        if (resultCount == results.length) {
+            results = Arrays.copyOf(results, resultCount * 2);
         }
+        results[resultCount++] = t;
     }
-
-    /**
-     * This method simplifies the parse tree recursively from the cond node.
-     * Calls the corresponding method for the children of the current node.
-     * We search the operator in the second child of the current node,
-     * and put it between the two children of the current node.
-     * @param t the current node
-     * @return the simplified node
-     */
-    private ParseTree cond(ParseTree t) {
-        ParseTree expL = exprArith(t.getChild(0));
-        ParseTree op = t.getChild(1).getChild(0);
-        ParseTree expR = exprArith(t.getChild(2));
-        return new ParseTree(new Symbol(op.getLabel().getType(), op.getLabel().getValue()),
-                Arrays.asList(expL, expR));
-    }
-
-
-    /**
-     * This method simplifies the parse tree recursively from the while node.
-     * Calls the corresponding method for the children of the current node.
-     * We put the condition in the first child, the code in the second child
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree while_(ParseTree t) {
-        ParseTree cond = cond(t.getChild(2));
-        ParseTree then = code(t.getChild(5));
-        return new ParseTree(new Symbol(LexicalUnit.WHILE_, "<While>"), Arrays.asList(cond, then));
-    }
-
-    /**
-     * This method simplifies the parse tree recursively from the print node.
-     * Calls the corresponding method for the children of the current node.
-     * We remove the parenthesis and the useless stuff.
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree print(ParseTree t) {
-        ParseTree pt = t.getChild(2);
-        return new ParseTree(new Symbol(LexicalUnit.PRINT_, "<Print>"), Arrays.asList(pt));
-    }
-
-    /**
-     * This method simplifies the parse tree recursively from the read node.
-     * Calls the corresponding method for the children of the current node.
-     * We remove the parenthesis and the useless stuff.
-     * @param t the current node
-     * @return the simplified node
-     */
-    ParseTree read(ParseTree t) {
-        ParseTree pt = t.getChild(2);
-        return new ParseTree(new Symbol(LexicalUnit.READ_, "<Read>"), Arrays.asList(pt));
-    }
-
-}
\ No newline at end of file
+}